@@ -0,0 +1,77 @@
+package mcts.jmh;
+
+import mcts.Action;
+import mcts.Board;
+import mcts.Player;
+import mcts.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BoardBenchmark {
+    // Board operations on each of the fixture positions
+
+    @Param({"opening", "middlegame", "near-full"})
+    public String position;
+
+    private Board board;
+
+    private Player next;
+
+    private List<Action> actions;
+
+    private int action;  // index of the next action applyAction plays (cycles through every action)
+
+
+    @Setup
+    public void setup() {
+        Fixtures.Position fixture = Fixtures.get(position);
+        board = new Board(fixture.board);
+        next = fixture.nextPlayer();
+        actions = board.getActions(next);
+    }
+
+
+    @Benchmark
+    public long applyAction() {
+        // applies an action & takes it back, so every op starts from the position
+        board.applyAction(actions.get(action));
+        long hash = board.getHash();
+        board.undo();
+
+        if (++action == actions.size()) action = 0;
+        return hash;
+    }
+
+    @Benchmark
+    public List<Action> getActions() {
+        return board.getActions(next);
+    }
+
+    @Benchmark
+    public Player checkWin() {
+        return board.checkWin();
+    }
+
+    @Benchmark
+    public Board copy() {
+        return new Board(board);
+    }
+}
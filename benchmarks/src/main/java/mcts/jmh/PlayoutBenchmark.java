@@ -0,0 +1,60 @@
+package mcts.jmh;
+
+import mcts.Board;
+import mcts.Player;
+import mcts.bench.Fixtures;
+import mcts.policies.RandomFillPlayout;
+import mcts.policies.RandomPlayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PlayoutBenchmark {
+    // one game played out to the end from each of the fixture positions (each op plays on a fresh copy)
+
+    @Param({"opening", "middlegame", "near-full"})
+    public String position;
+
+    private Fixtures.Position fixture;
+
+    private final RandomPlayout playout = new RandomPlayout();
+
+    private final RandomFillPlayout fillPlayout = new RandomFillPlayout();
+
+    private final SplittableRandom rand = new SplittableRandom(1);  // seeded, so every fork plays the same games
+
+
+    @Setup
+    public void setup() {
+        fixture = Fixtures.get(position);
+    }
+
+
+    @Benchmark
+    public Player randomPlayout() {
+        return playout.playout(new Board(fixture.board), fixture.lastPlayer, rand);
+    }
+
+    @Benchmark
+    public Player randomFillPlayout() {
+        // (the playout the searches use)
+        return fillPlayout.playout(new Board(fixture.board), fixture.lastPlayer, rand);
+    }
+}
@@ -0,0 +1,108 @@
+package mcts.jmh;
+
+import mcts.Board;
+import mcts.MCTS;
+import mcts.RootMCTS;
+import mcts.TreeNode;
+import mcts.bench.Fixtures;
+import mcts.policies.UCTSelect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SearchBenchmark {
+    // search steps on trees grown from each of the fixture positions
+
+    private static final int SELECT_ITERATIONS = 20000;  // size of the tree uctSelect descends
+
+    private static final int JOIN_TREES = 4;  // no. of worker trees joinTrees merges
+
+    private static final int JOIN_ITERATIONS = 2000;  // size of each worker tree
+
+    @Param({"opening", "middlegame", "near-full"})
+    public String position;
+
+    private Fixtures.Position fixture;
+
+    private final SplittableRandom rand = new SplittableRandom(1);  // seeded, so every fork grows the same trees
+
+    private final UCTSelect select = new UCTSelect();
+
+    private final MCTS mcts = new MCTS(0, false, false);
+
+    private Board board;
+
+    private TreeNode selectTree;  // grown once, for uctSelect
+
+    private TreeNode iterationTree;  // grown by iteration (emptied at the start of each measurement iteration)
+
+    private TreeNode joinBase;
+
+    private final List<TreeNode> joinTrees = new ArrayList<>();
+
+
+    @Setup
+    public void setup() {
+        fixture = Fixtures.get(position);
+        board = new Board(fixture.board);
+        mcts.setRandom(rand);
+
+        selectTree = new TreeNode(fixture.lastPlayer);
+        for (int i = 0; i < SELECT_ITERATIONS; i++) mcts.iterate(board, selectTree);
+
+        // worker trees copied from the same base, as RootMCTS's workers are
+        joinBase = new TreeNode(fixture.lastPlayer);
+        for (int t = 0; t < JOIN_TREES; t++) {
+            TreeNode tree = new TreeNode(null, joinBase);
+            for (int i = 0; i < JOIN_ITERATIONS; i++) mcts.iterate(board, tree);
+            joinTrees.add(tree);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyTree() {
+        iterationTree = new TreeNode(fixture.lastPlayer);
+    }
+
+
+    @Benchmark
+    public TreeNode uctSelect() {
+        // one UCTSelect descent (the board is moved back after it)
+        int moves = board.getMoveCount();
+        TreeNode selected = select.select(selectTree, board, rand);
+        board.undoTo(moves);
+        return selected;
+    }
+
+    @Benchmark
+    public boolean iteration() {
+        // one full select, expand, playout & back-propagate iteration with the default policies
+        // (the tree grows through each measurement iteration, so later ops select deeper)
+        return mcts.iterate(board, iterationTree);
+    }
+
+    @Benchmark
+    public TreeNode joinTrees() {
+        return RootMCTS.joinTrees(joinBase, joinTrees, 0);
+    }
+}
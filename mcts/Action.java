@@ -2,6 +2,23 @@ package mcts;
 
 public class Action {
     // data structure for representing a possible action choice
+    // actions are immutable & interned: there is one instance per player per move, so nothing allocates them
+
+    public static final int SWAP = 121;  // move number for a swap (cells are x * 11 + y, 0-120)
+
+    public static final int MOVES = 122;  // move numbers (121 cells + swap)
+
+    private static final Player[] PLAYERS = Player.values();
+
+    private static final Action[] TABLE = new Action[PLAYERS.length * MOVES];  // indexed by getIndex()
+
+    static {
+        for (Player p: PLAYERS) {
+            for (int move = 0; move < SWAP; move++)
+                TABLE[p.ordinal() * MOVES + move] = new Action(p, move / 11, move % 11);
+            TABLE[p.ordinal() * MOVES + SWAP] = new Action(p, true);
+        }
+    }
 
     private final Player player;
 
@@ -12,7 +29,7 @@ public class Action {
     private final boolean swap;
 
 
-    public Action(Player player, int x, int y) {
+    private Action(Player player, int x, int y) {
         // constructor for a regular move
         this.player = player;
         this.x = (byte)x;
@@ -20,7 +37,7 @@ public class Action {
         this.swap = false;
     }
 
-    public Action(Player player, boolean swap) {
+    private Action(Player player, boolean swap) {
         // constructor for a swap move (co-ords are irrelevant, set swap to true)
         this.player = player;
         this.x = 0;
@@ -29,6 +46,26 @@ public class Action {
     }
 
 
+    public static Action of(Player player, int x, int y) {
+        // gets the action for a regular move
+        return TABLE[player.ordinal() * MOVES + x * 11 + y];
+    }
+
+    public static Action of(Player player, int move) {
+        // gets the action for a move number (x * 11 + y, or SWAP)
+        return TABLE[player.ordinal() * MOVES + move];
+    }
+
+    public static Action swap(Player player) {
+        return TABLE[player.ordinal() * MOVES + SWAP];
+    }
+
+    public static Action byIndex(int index) {
+        // gets the action with the given getIndex()
+        return TABLE[index];
+    }
+
+
     public Player getPlayer() {
         return player;
     }
@@ -45,6 +82,16 @@ public class Action {
         return swap;
     }
 
+    public int getMoveIndex() {
+        // move number for the action (x * 11 + y, or 121 for a swap)
+        return swap ? SWAP : x * 11 + y;
+    }
+
+    public int getIndex() {
+        // dense index over every player's actions (player ordinal * MOVES + move number)
+        return player.ordinal() * MOVES + getMoveIndex();
+    }
+
 
     @Override
     public String toString() {
@@ -64,4 +111,9 @@ public class Action {
         if (swap != action.swap) return false;
         return player == action.player;
     }
+
+    @Override
+    public int hashCode() {
+        return getIndex();
+    }
 }
@@ -3,33 +3,173 @@ package mcts;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 public class Board {
     // representation of the game board
+    // each colour is stored as a 128-bit mask split over 2 longs (121 cells fit in 128 bits)
+    // cell (x, y) maps to bit x * BOARD_SIZE + y, bits 0-63 in the low word & 64-120 in the high word
+    // connectivity is tracked incrementally with a union-find over the cells plus 4 virtual edge nodes
+    // the empty cells are also kept in a dense array (with each cell's position in it), so random moves can be
+    // picked in constant time
+    // moves are kept on a stack & can be undone, so a search can walk the tree on one board without copying it
+    // (the union-find doesn't compress paths, so each union is a single change which is recorded & reverted)
+    // a zobrist hash of the position is also kept up to date as pieces are placed
 
     private final byte BOARD_SIZE = 11;
 
-    private final Player[][] board;
+    private static final int CELLS = 121;
+
+    private static final long HIGH_MASK = (1L << (CELLS - 64)) - 1;  // valid bits of the high word
+
+    // virtual nodes for the board edges (red joins top & bottom, blue joins left & right)
+    private static final int TOP = CELLS, BOTTOM = CELLS + 1, LEFT = CELLS + 2, RIGHT = CELLS + 3;
+
+    private static final byte[] NO_UNIONS = new byte[CELLS + 4];  // every node as its own set
+
+    private static final int SWAP = CELLS;  // move number for swap in the move history
+
+    private static final int FILL = CELLS + 1;  // move number for a whole fill in the move history
+
+    private static final int RANK_CHANGED = 0x80;  // marks unions which also raised the new root's rank
+
+    private static final byte[][] NEIGHBOURS = new byte[CELLS][];  // precomputed neighbour cells for each cell
+
+    // row & column masks for bitboard flood fills (used to evaluate filled boards)
+    private static final long TOP_ROW_LOW = (1L << 11) - 1;
+    private static final long BOTTOM_ROW_HIGH = ((1L << 11) - 1) << (CELLS - 11 - 64);
+    private static long notFirstColLow, notFirstColHigh;  // every cell except y = 0
+    private static long notLastColLow, notLastColHigh;  // every cell except y = 10
+
+    // zobrist keys for each colour in each cell, plus one for swap being available
+    // (fixed seed, so hashes are the same in every run)
+    private static final long[][] ZOBRIST = new long[2][CELLS];
+    private static final long SWAP_AVAILABLE;
+
+    static {
+        for (int i = 0; i < NO_UNIONS.length; i++) NO_UNIONS[i] = (byte) i;
+
+        SplittableRandom keys = new SplittableRandom(0x4E58L);
+        for (int i = 0; i < CELLS; i++) {
+            ZOBRIST[Player.RED.ordinal()][i] = keys.nextLong();
+            ZOBRIST[Player.BLUE.ordinal()][i] = keys.nextLong();
+        }
+        SWAP_AVAILABLE = keys.nextLong();
+
+        for (int i = 0; i < CELLS; i++) {
+            if (i % 11 != 0) {
+                if (i < 64) notFirstColLow |= 1L << i;
+                else notFirstColHigh |= 1L << (i - 64);
+            }
+            if (i % 11 != 10) {
+                if (i < 64) notLastColLow |= 1L << i;
+                else notLastColHigh |= 1L << (i - 64);
+            }
+        }
+
+        int[][] offsets = {{0, -1}, {1, -1}, {-1, 0}, {1, 0}, {-1, 1}, {0, 1}};
+        int size = 11;
+        for (int x = 0; x < size; x++)
+            for (int y = 0; y < size; y++) {
+                byte[] cells = new byte[offsets.length];
+                int n = 0;
+                for (int[] offset: offsets) {
+                    int nx = x + offset[0];
+                    int ny = y + offset[1];
+                    if (nx >= 0 && nx < size && ny >= 0 && ny < size) cells[n++] = (byte) (nx * size + ny);
+                }
+                NEIGHBOURS[x * size + y] = Arrays.copyOf(cells, n);
+            }
+    }
+
+    private long redLow, redHigh;  // cells occupied by red
+
+    private long blueLow, blueHigh;  // cells occupied by blue
 
     private byte turnCount = 0;  // max turn count = 121, so byte is sufficient
 
+    private final byte[] parent;  // union-find parent for each cell & edge node (125 nodes, so byte is sufficient)
+
+    private final byte[] rank;  // union-find rank, keeps the trees shallow
+
+    private Player winner = Player.NONE;  // cached result of checkWin, updated whenever a piece is placed
+
+    private long hash;  // zobrist hash of the pieces on the board
+
+    private final byte[] empty;  // empty cells, in no particular order (the first emptyCount are valid)
+
+    private final byte[] emptyIndex;  // position of each empty cell in empty
+
+    private int emptyCount = CELLS;
+
+    private final byte[] history;  // moves which can be undone, latest last (cell index, SWAP or FILL)
+
+    private final byte[] trailStart;  // size of the trail before each move in history
+
+    private final byte[] trail;  // union-find changes, latest last (node given a new parent, plus RANK_CHANGED)
+
+    private int moveCount, trailSize;
+
+    private int trailBase;  // moves before this one were made before the last rebuild, so have no trail
+
+    // state from before the last fill, which undoing it restores in one go
+    private long preFillRedLow, preFillRedHigh, preFillBlueLow, preFillBlueHigh, preFillHash;
+    private int preFillEmptyCount;
+    private byte preFillTurnCount;
+    private Player preFillWinner;
+
 
     public Board() {
-        board = new Player[BOARD_SIZE][BOARD_SIZE];
-        for (int x = 0; x < BOARD_SIZE; x++)
-            for (int y = 0; y < BOARD_SIZE; y++)
-                board[x][y] = Player.NONE;
+        // all masks start empty
+        parent = NO_UNIONS.clone();
+        rank = new byte[NO_UNIONS.length];
+
+        // every cell is empty, in order (the first CELLS nodes of NO_UNIONS are 0 to CELLS - 1)
+        empty = Arrays.copyOf(NO_UNIONS, CELLS);
+        emptyIndex = Arrays.copyOf(NO_UNIONS, CELLS);
+
+        // at most every cell, a swap & a fill can be played, & each union joins 2 of the CELLS + 4 sets
+        history = new byte[CELLS + 2];
+        trailStart = new byte[CELLS + 2];
+        trail = new byte[CELLS + 3];
     }
 
     public Board(Board oldBoard) {
         // copy constructor
 
-        board = new Player[BOARD_SIZE][BOARD_SIZE];
-        for (int x = 0; x < BOARD_SIZE; x++)
-            for (int y = 0; y < BOARD_SIZE; y++)
-                board[x][y] = oldBoard.getCell(x, y);
+        redLow = oldBoard.redLow;
+        redHigh = oldBoard.redHigh;
+        blueLow = oldBoard.blueLow;
+        blueHigh = oldBoard.blueHigh;
 
         turnCount = oldBoard.turnCount;
+
+        parent = oldBoard.parent.clone();
+        rank = oldBoard.rank.clone();
+        winner = oldBoard.winner;
+
+        hash = oldBoard.hash;
+
+        empty = oldBoard.empty.clone();
+        emptyIndex = oldBoard.emptyIndex.clone();
+        emptyCount = oldBoard.emptyCount;
+
+        history = oldBoard.history.clone();
+        trailStart = oldBoard.trailStart.clone();
+        trail = oldBoard.trail.clone();
+        moveCount = oldBoard.moveCount;
+        trailSize = oldBoard.trailSize;
+        trailBase = oldBoard.trailBase;
+
+        preFillRedLow = oldBoard.preFillRedLow;
+        preFillRedHigh = oldBoard.preFillRedHigh;
+        preFillBlueLow = oldBoard.preFillBlueLow;
+        preFillBlueHigh = oldBoard.preFillBlueHigh;
+        preFillHash = oldBoard.preFillHash;
+        preFillEmptyCount = oldBoard.preFillEmptyCount;
+        preFillTurnCount = oldBoard.preFillTurnCount;
+        preFillWinner = oldBoard.preFillWinner;
     }
 
     public Board(String input) {
@@ -43,8 +183,8 @@ public class Board {
         for (int x = 0; x < inputLines.length; x++) {
             inputLines[x] = inputLines[x].strip();
             for (int y = 0; y < inputLines[x].length(); y++) {
-                if (inputLines[x].charAt(y) == 'R') board[x][y] = Player.RED;
-                else if (inputLines[x].charAt(y) == 'B') board[x][y] = Player.BLUE;
+                if (inputLines[x].charAt(y) == 'R') setCell(x, y, Player.RED);
+                else if (inputLines[x].charAt(y) == 'B') setCell(x, y, Player.BLUE);
             }
         }
         System.out.println();
@@ -53,102 +193,432 @@ public class Board {
 
     public void applyAction(Action a) {
         turnCount++;
-        if (a.isSwap())
-            // swaps the colour of every piece on the board
-            for (int x = 0; x < BOARD_SIZE; x++)
-                for (int y = 0; y < BOARD_SIZE; y++) {
-                    if (board[x][y] == Player.RED) board[x][y] = Player.BLUE;
-                    else if (board[x][y] == Player.BLUE) board[x][y] = Player.RED;
-                }
+        trailStart[moveCount] = (byte) trailSize;
+        if (a.isSwap()) {
+            history[moveCount++] = (byte) SWAP;
+            swapColours();
+        }
+
+        else {
+            history[moveCount++] = (byte) (a.getX() * BOARD_SIZE + a.getY());
+            setCell(a.getX(), a.getY(), a.getPlayer());
+        }
+    }
+
+    public void undo() {
+        // takes back the last move (a whole fill counts as one move)
+        undoMove();
+        winner = connectedWinner();
+    }
+
+    public void undoTo(int count) {
+        // undoes moves until only count are left (see getMoveCount)
+        while (moveCount > count) undoMove();
+        winner = connectedWinner();
+    }
+
+    private void undoMove() {
+        // takes back the last move, without updating the winner
+        int move = history[--moveCount];
+
+        if (move == FILL) {
+            // restore everything fill changed (it never touches the union-find)
+            redLow = preFillRedLow;
+            redHigh = preFillRedHigh;
+            blueLow = preFillBlueLow;
+            blueHigh = preFillBlueHigh;
+            hash = preFillHash;
+            emptyCount = preFillEmptyCount;
+            turnCount = preFillTurnCount;
+            winner = preFillWinner;
+            return;
+        }
+
+        turnCount--;
+
+        if (move == SWAP) {
+            swapColours();
+            return;
+        }
+
+        int i = move;
+        long bit = 1L << (i & 63);
+        Player p;
+        if (i < 64 ? (redLow & bit) != 0 : (redHigh & bit) != 0) {
+            p = Player.RED;
+            if (i < 64) redLow &= ~bit;
+            else redHigh &= ~bit;
+        }
+        else {
+            p = Player.BLUE;
+            if (i < 64) blueLow &= ~bit;
+            else blueHigh &= ~bit;
+        }
+        hash ^= ZOBRIST[p.ordinal()][i];
+        addEmpty();
+
+        if (moveCount < trailBase) {
+            // made before the last rebuild, so connectivity has to be rebuilt too
+            rebuildUnions();
+            return;
+        }
+
+        // revert the move's unions (newest first)
+        while (trailSize > trailStart[moveCount]) {
+            int change = trail[--trailSize] & 0xFF;
+            int node = change & ~RANK_CHANGED;
+            if ((change & RANK_CHANGED) != 0) rank[parent[node]]--;
+            parent[node] = (byte) node;
+        }
+    }
+
+    public int getMoveCount() {
+        // no. of moves which can be undone
+        return moveCount;
+    }
+
+    private void swapColours() {
+        // swaps the colour of every piece on the board (swap is its own inverse)
+        long tempLow = redLow, tempHigh = redHigh;
+        redLow = blueLow;
+        redHigh = blueHigh;
+        blueLow = tempLow;
+        blueHigh = tempHigh;
+        hash = swappedHash();
+
+        // groups are unchanged, but each colour now joins the other pair of edges
+        rebuildUnions();
+    }
+
+    private void setCell(int x, int y, Player p) {
+        // places a piece of the given colour (assumes the cell is empty)
+        int i = x * BOARD_SIZE + y;
+        if (p == Player.RED) {
+            if (i < 64) redLow |= 1L << i;
+            else redHigh |= 1L << (i - 64);
+        }
+        else if (p == Player.BLUE) {
+            if (i < 64) blueLow |= 1L << i;
+            else blueHigh |= 1L << (i - 64);
+        }
+        else return;
+
+        hash ^= ZOBRIST[p.ordinal()][i];
+        removeEmpty(i);
+        connect(x, y, p);
+    }
+
+    private void addEmpty() {
+        // puts the last removed cell back (moves are undone in reverse, so it's still just past the end)
+        emptyCount++;
+    }
+
+    private void removeEmpty(int i) {
+        // removes a cell from the empty cells, swapping it with the last one (so it can be put back by addEmpty)
+        byte last = empty[--emptyCount];
+        int position = emptyIndex[i];
+        empty[position] = last;
+        emptyIndex[last] = (byte) position;
+        empty[emptyCount] = (byte) i;
+        emptyIndex[i] = (byte) emptyCount;
+    }
+
+    private void connect(int x, int y, Player p) {
+        // joins a newly placed piece with its matching neighbours & edges, then updates the winner
+        int i = x * BOARD_SIZE + y;
+
+        for (byte neighbour: NEIGHBOURS[i])
+            if (getCell(neighbour / BOARD_SIZE, neighbour % BOARD_SIZE) == p) union(i, neighbour);
+
+        if (p == Player.RED) {
+            if (x == 0) union(i, TOP);
+            if (x == BOARD_SIZE - 1) union(i, BOTTOM);
+            if (find(TOP) == find(BOTTOM)) winner = Player.RED;
+        }
+        else {
+            if (y == 0) union(i, LEFT);
+            if (y == BOARD_SIZE - 1) union(i, RIGHT);
+            if (find(LEFT) == find(RIGHT)) winner = Player.BLUE;
+        }
+    }
+
+    private Player connectedWinner() {
+        // winner according to the union-find (used after undoing, since the winner may have been taken back)
+        if (find(TOP) == find(BOTTOM)) return Player.RED;
+        if (find(LEFT) == find(RIGHT)) return Player.BLUE;
+        return Player.NONE;
+    }
+
+    private void rebuildUnions() {
+        // recomputes connectivity from scratch (only needed after a swap)
+        // the trail is restarted, so undoing an earlier move has to rebuild again
+        // (only swap needs this, which is only possible after the first move)
+        System.arraycopy(NO_UNIONS, 0, parent, 0, parent.length);
+        Arrays.fill(rank, (byte) 0);
+        trailSize = 0;
+        trailBase = moveCount;
+        winner = Player.NONE;
+
+        for (int x = 0; x < BOARD_SIZE; x++)
+            for (int y = 0; y < BOARD_SIZE; y++) {
+                Player p = getCell(x, y);
+                if (p != Player.NONE) connect(x, y, p);
+            }
+    }
+
+    private int find(int i) {
+        // finds the set representative
+        // (no path compression so unions can be undone, union by rank keeps the trees at most 7 deep)
+        while (parent[i] != i) i = parent[i];
+        return i;
+    }
+
+    private void union(int a, int b) {
+        // merges the sets containing a & b (union by rank)
+        a = find(a);
+        b = find(b);
+        if (a == b) return;
 
-        else
-            board[a.getX()][a.getY()] = a.getPlayer();
+        if (rank[a] < rank[b]) {
+            parent[a] = (byte) b;
+            trail[trailSize++] = (byte) a;
+        }
+        else if (rank[a] > rank[b]) {
+            parent[b] = (byte) a;
+            trail[trailSize++] = (byte) b;
+        }
+        else {
+            parent[b] = (byte) a;
+            rank[a]++;
+            trail[trailSize++] = (byte) (b | RANK_CHANGED);
+        }
     }
 
     public Player getCell(int x, int y) {
-        return board[x][y];
+        int i = x * BOARD_SIZE + y;
+        long bit;
+        if (i < 64) {
+            bit = 1L << i;
+            if ((redLow & bit) != 0) return Player.RED;
+            if ((blueLow & bit) != 0) return Player.BLUE;
+        }
+        else {
+            bit = 1L << (i - 64);
+            if ((redHigh & bit) != 0) return Player.RED;
+            if ((blueHigh & bit) != 0) return Player.BLUE;
+        }
+        return Player.NONE;
+    }
+
+    public void setTurnCount(int turnCount) {
+        // sets the no. of turns played, for boards parsed from protocol strings (which only show the pieces, so
+        // would otherwise be at turn 0 & offer swap on the wrong turn)
+        this.turnCount = (byte) turnCount;
+    }
+
+    public boolean isSwapAvailable() {
+        return turnCount == 1;
+    }
+
+    public int getActionCount() {
+        // counts the possible actions without building them (empty cells + swap if available)
+        return turnCount == 1 ? emptyCount + 1 : emptyCount;
     }
 
     public List<Action> getActions(Player p) {
         // gets a list of possible actions for the given player (i.e. empty cells)
-        List<Action> actions = new ArrayList<>();
+        List<Action> actions = new ArrayList<>(getActionCount());
+
+        // walk the set bits of the empty masks, lowest cell first
+        long emptyLow = ~(redLow | blueLow);
+        while (emptyLow != 0) {
+            int i = Long.numberOfTrailingZeros(emptyLow);
+            actions.add(Action.of(p, i));
+            emptyLow &= emptyLow - 1;
+        }
 
-        for (int x = 0; x < BOARD_SIZE; x++)
-            for (int y = 0; y < BOARD_SIZE; y++)
-                if (board[x][y] == Player.NONE)
-                    actions.add(new Action(p, x, y));
+        long emptyHigh = ~(redHigh | blueHigh) & HIGH_MASK;
+        while (emptyHigh != 0) {
+            int i = Long.numberOfTrailingZeros(emptyHigh) + 64;
+            actions.add(Action.of(p, i));
+            emptyHigh &= emptyHigh - 1;
+        }
 
         // if turn count is 1, swap is available
-        if (turnCount == 1) actions.add(new Action(p, true));
+        if (turnCount == 1) actions.add(Action.swap(p));
 
         return actions;
     }
 
-    public Player checkWin() {
-        // initialise every tile as unvisited
-        boolean[][] visited = new boolean[BOARD_SIZE][BOARD_SIZE];
-        for (int x = 0; x < BOARD_SIZE; x++)
-            for (int y = 0; y < BOARD_SIZE; y++)
-                visited[x][y] = false;
+    public int getEmptyCells(byte[] cells) {
+        // writes the index (x * BOARD_SIZE + y) of every empty cell into cells & returns how many there are
+        // (in no particular order)
+        System.arraycopy(empty, 0, cells, 0, emptyCount);
+        return emptyCount;
+    }
 
-        // for each location on the top row / leftmost column
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            // check for red wins (top to bottom)
-            if (board[0][i] == Player.RED)
-                if (winSearch(0, i, Player.RED, visited)) return Player.RED;
-            // check for blue wins (left to right)
-            if (board[i][0] == Player.BLUE)
-                if (winSearch(i, 0, Player.BLUE, visited)) return Player.BLUE;
+    public int getEmptyCount() {
+        return emptyCount;
+    }
+
+    public int getEmptyCell(int n) {
+        // index (x * BOARD_SIZE + y) of the nth empty cell, for 0 <= n < getEmptyCount()
+        return empty[n];
+    }
+
+    public Action randomAction(Player p, RandomGenerator rand) {
+        // picks a uniformly random possible action for the given player (including swap if available)
+        int n = rand.nextInt(turnCount == 1 ? emptyCount + 1 : emptyCount);
+        if (n == emptyCount) return Action.swap(p);
+
+        return Action.of(p, empty[n]);
+    }
+
+    public Player fill(byte[] cells, int count, Player first) {
+        // places the given cells alternately for each player (starting with first) & returns the winner
+        // meant for filling the board to the end of a playout, so the union-find is not updated
+        // (a full board always has exactly one winner, so a single flood fill for red settles it)
+        // the whole fill is one move on the undo stack, & no other move should be made on top of it
+
+        // save what's needed to undo the fill
+        preFillRedLow = redLow;
+        preFillRedHigh = redHigh;
+        preFillBlueLow = blueLow;
+        preFillBlueHigh = blueHigh;
+        preFillHash = hash;
+        preFillEmptyCount = emptyCount;
+        preFillTurnCount = turnCount;
+        preFillWinner = winner;
+        trailStart[moveCount] = (byte) trailSize;
+        history[moveCount++] = (byte) FILL;
+
+        // filling every empty cell leaves the empty cells as they are, so undoing only needs the count
+        boolean partial = count < emptyCount;
+        if (!partial) emptyCount = 0;
+
+        Player p = first;
+        for (int n = 0; n < count; n++) {
+            int i = cells[n];
+            hash ^= ZOBRIST[p.ordinal()][i];
+            if (partial) removeEmpty(i);
+            if (p == Player.RED) {
+                if (i < 64) redLow |= 1L << i;
+                else redHigh |= 1L << (i - 64);
+                p = Player.BLUE;
+            }
+            else {
+                if (i < 64) blueLow |= 1L << i;
+                else blueHigh |= 1L << (i - 64);
+                p = Player.RED;
+            }
         }
+        turnCount += count;
 
-        return Player.NONE;
+        if (winner == Player.NONE) winner = redConnected() ? Player.RED : Player.BLUE;
+        return winner;
+    }
+
+    private boolean redConnected() {
+        // flood fills red pieces from the top row, one step in all 6 directions per loop
+        long reachLow = redLow & TOP_ROW_LOW;
+        long reachHigh = 0;
+
+        while (true) {
+            // x - 1 & x + 1 (shift by a whole row)
+            long nextLow = reachLow | (reachLow << 11) | (reachLow >>> 11) | (reachHigh << 53);
+            long nextHigh = reachHigh | (reachHigh << 11) | (reachLow >>> 53) | (reachHigh >>> 11);
+
+            // y + 1 & (x - 1, y + 1), masked so nothing wraps onto the next row
+            nextLow |= ((reachLow << 1) | (reachLow >>> 10) | (reachHigh << 54)) & notFirstColLow;
+            nextHigh |= ((reachHigh << 1) | (reachLow >>> 63) | (reachHigh >>> 10)) & notFirstColHigh;
+
+            // y - 1 & (x + 1, y - 1), masked so nothing wraps onto the previous row
+            nextLow |= ((reachLow >>> 1) | (reachHigh << 63) | (reachLow << 10)) & notLastColLow;
+            nextHigh |= ((reachHigh >>> 1) | (reachHigh << 10) | (reachLow >>> 54)) & notLastColHigh;
+
+            nextLow &= redLow;
+            nextHigh &= redHigh;
+
+            if ((nextHigh & BOTTOM_ROW_HIGH) != 0) return true;
+            if (nextLow == reachLow && nextHigh == reachHigh) return false;
+
+            reachLow = nextLow;
+            reachHigh = nextHigh;
+        }
+    }
+
+    public long getHash() {
+        // zobrist hash of the position (pieces on the board & whether swap is available)
+        return hash ^ (turnCount == 1 ? SWAP_AVAILABLE : 0);
+    }
+
+    public long getPiecesHash() {
+        // zobrist hash of just the pieces on the board (without swap availability)
+        return hash;
+    }
+
+    public long getRotatedPiecesHash() {
+        // hash the pieces would have with the board turned 180 degrees (cell i moves to 120 - i)
+        // each player's edges map onto each other, so the rotated position is equivalent
+        return rotatedHash(redLow, redHigh, Player.RED) ^ rotatedHash(blueLow, blueHigh, Player.BLUE);
+    }
+
+    private static long rotatedHash(long low, long high, Player p) {
+        long[] keys = ZOBRIST[p.ordinal()];
+        long rotated = 0;
+        while (low != 0) {
+            rotated ^= keys[CELLS - 1 - Long.numberOfTrailingZeros(low)];
+            low &= low - 1;
+        }
+        while (high != 0) {
+            rotated ^= keys[CELLS - 1 - (Long.numberOfTrailingZeros(high) + 64)];
+            high &= high - 1;
+        }
+        return rotated;
     }
 
-    public boolean winSearch(int x, int y, Player p, boolean[][] visited) {
-        // mark this space as visited
-        visited[x][y] = true;
+    public long hashAfter(Action a) {
+        // hash the position would have after applying the action, without changing the board
+        long newHash;
+        if (a.isSwap()) newHash = swappedHash();
+        else newHash = hash ^ ZOBRIST[a.getPlayer().ordinal()][a.getX() * BOARD_SIZE + a.getY()];
 
-        // return true if reached the other side (i.e. win)
-        if (p == Player.RED && x == BOARD_SIZE - 1) return true;
-        if (p == Player.BLUE && y == BOARD_SIZE - 1) return true;
+        return newHash ^ (turnCount == 0 ? SWAP_AVAILABLE : 0);
+    }
+
+    private long swappedHash() {
+        // hash of the pieces with every colour swapped
+        long newHash = hash;
+        long occupiedLow = redLow | blueLow;
+        while (occupiedLow != 0) {
+            int i = Long.numberOfTrailingZeros(occupiedLow);
+            newHash ^= ZOBRIST[0][i] ^ ZOBRIST[1][i];
+            occupiedLow &= occupiedLow - 1;
+        }
 
-        // visit unvisited matching neighbours
-        for (int[] neighbour: getNeighbours(x, y)) {
-            // check neighbour is unvisited
-            if (!visited[neighbour[0]][neighbour[1]])
-                // check neighbour is matching
-                if (board[neighbour[0]][neighbour[1]] == p)
-                    // if the neighbour leads to a win, return true
-                    if (winSearch(neighbour[0], neighbour[1], p, visited)) return true;
+        long occupiedHigh = redHigh | blueHigh;
+        while (occupiedHigh != 0) {
+            int i = Long.numberOfTrailingZeros(occupiedHigh) + 64;
+            newHash ^= ZOBRIST[0][i] ^ ZOBRIST[1][i];
+            occupiedHigh &= occupiedHigh - 1;
         }
 
-        // if no neighbours lead to a win, return false
-        return false;
+        return newHash;
+    }
+
+    public Player checkWin() {
+        // connectivity is maintained as pieces are placed, so this is just a lookup
+        return winner;
     }
 
     public List<int[]> getNeighbours(int x, int y) {
         // gets the neighbour co-ords for given location
 
-        List<int[]> neighbours = new ArrayList<>(Arrays.asList(
-                new int[]{x, y-1},
-                new int[]{x+1, y-1},
-                new int[]{x-1, y},
-                new int[]{x+1, y},
-                new int[]{x-1, y+1},
-                new int[]{x, y+1}
-        ));
-
-        // remove neighbours which fall off board
-        List<int[]> off = new ArrayList<>();
-        for (int[] co_ords: neighbours) {
-            if (co_ords[0] < 0 || co_ords[0] > BOARD_SIZE - 1)
-                off.add(co_ords);
-            else if (co_ords[1] < 0 || co_ords[1] > BOARD_SIZE - 1)
-                off.add(co_ords);
-        }
-        neighbours.removeAll(off);
+        byte[] cells = NEIGHBOURS[x * BOARD_SIZE + y];
+        List<int[]> neighbours = new ArrayList<>(cells.length);
+        for (byte cell: cells)
+            neighbours.add(new int[]{cell / BOARD_SIZE, cell % BOARD_SIZE});
 
         return neighbours;
-
     }
 }
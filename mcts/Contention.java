@@ -0,0 +1,21 @@
+package mcts;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class Contention {
+    // process-wide counters for work lost to contention between threads sharing a tree
+    // only updated on the conflict paths, so they cost nothing when threads don't collide
+
+    public static final LongAdder CLAIM_RETRIES = new LongAdder();  // expansions which found every action already taken
+
+    public static final LongAdder CLAIM_CONFLICTS = new LongAdder();  // untried actions another thread built first
+
+    public static final LongAdder WASTED_ITERATIONS = new LongAdder();  // iterations that found nothing to expand
+
+
+    public static void reset() {
+        CLAIM_RETRIES.reset();
+        CLAIM_CONFLICTS.reset();
+        WASTED_ITERATIONS.reset();
+    }
+}
@@ -0,0 +1,53 @@
+package mcts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+public class Frontier {
+    // set of tree nodes which can still be expanded (non-terminal with untried actions)
+    // kept up to date as the tree grows, rather than found by walking the whole tree
+    // nodes are held in a dense list with each node's position in it, so adding, removing & picking a
+    // uniformly random node are all constant time
+    // not thread-safe, each search thread needs its own
+
+    private final List<TreeNode> nodes = new ArrayList<>();
+
+    private final Map<TreeNode, Integer> positions = new HashMap<>();
+
+
+    public void add(TreeNode node) {
+        if (positions.containsKey(node)) return;
+        positions.put(node, nodes.size());
+        nodes.add(node);
+    }
+
+    public void remove(TreeNode node) {
+        // swaps the last node into the removed node's place
+        Integer position = positions.remove(node);
+        if (position == null) return;
+
+        TreeNode last = nodes.remove(nodes.size() - 1);
+        if (!last.equals(node)) {
+            nodes.set(position, last);
+            positions.put(last, position);
+        }
+    }
+
+    public TreeNode sample(RandomGenerator rand) {
+        // returns a uniformly random node (or null if there are none)
+        if (nodes.isEmpty()) return null;
+        return nodes.get(rand.nextInt(nodes.size()));
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public void clear() {
+        nodes.clear();
+        positions.clear();
+    }
+}
@@ -1,8 +1,12 @@
 package mcts;
 
+import mcts.events.IterationEvent;
+import mcts.events.SearchEvent;
+import mcts.events.SyncEvent;
 import mcts.policies.*;
 
-import java.util.Stack;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 public class MCTS {
     // main class for MCTS
@@ -13,6 +17,10 @@ public class MCTS {
 
     private final boolean EXPLOIT;  // whether to choose a move after simulating
 
+    private static final int SAMPLE_INTERVAL = 1024;  // iterations between each timed IterationEvent (power of 2)
+
+    private static final int DECIDED_INTERVAL = 256;  // iterations between checks for a decided move (power of 2)
+
     private final int VIRTUAL_LOSS;  // amount to add as virtual loss when node is selected (0 means no virtual loss)
     // virtual loss acts like adding VIRTUAL_LOSS losses (i.e. visit but not win)
 
@@ -25,12 +33,27 @@ public class MCTS {
 
     private ExploitPolicy exploit;  // policy for choosing a move to make after simulations
 
+    private TranspositionTable table;  // shared statistics for transposed positions (null if not used)
+
+    private NodeBudget budget;  // limit on the tree's size (null for no limit)
+    private boolean prunable = true;  // false once pruning couldn't get the tree back under budget (it then stops growing)
+
+    private RandomGenerator rand = new SplittableRandom();  // random source for the policies (only used by this search's thread)
+
 
     private int count;
     private TreeNode root;  // root of the partial tree
-    private TreeNode newRoot;  // new tree after synchronising
 
-    public boolean suspend;  // used to suspend simulation for synchronising
+    private int maxDepth;  // deepest node selected for expansion in the last search
+    private long depthSum;  // total depth of the nodes selected for expansion in the last search
+
+    private RootStatsBoard.WorkerSync sync;  // shares top-ply statistics with other workers (null if not used)
+    private int syncInterval;  // time in ms between syncs
+    private long syncTime;  // time in ns spent syncing during the last search
+
+    private volatile boolean stopped;  // set to end the search early (stays set, instances are used for one search)
+
+    private boolean stopWhenDecided;  // whether to end the search once the remaining play-outs can't change the move
 
 
     public MCTS(int timeout) {
@@ -48,7 +71,7 @@ public class MCTS {
     public MCTS(int timeout, boolean log, boolean exploit, int vLoss) {
         this.select = new UCTSelect();
         this.expand = new RandomExpand();
-        this.playout = new RandomPlayout();
+        this.playout = new RandomFillPlayout();
         this.exploit = new WinRateExploit();
         this.TIMEOUT = timeout;
         this.LOG = log;
@@ -68,6 +91,30 @@ public class MCTS {
         this.exploit = exploit;
     }
 
+    public void setRandom(RandomGenerator rand) {
+        // replaces the policies' random source (e.g. with a seeded one for reproducible runs)
+        // the generator must not be shared with another thread
+        this.rand = rand;
+    }
+
+    public void setTranspositionTable(TranspositionTable table) {
+        // statistics are also added to the table during back-propagation
+        // (pair with UCTSelectTransposition so selection reads them back)
+        this.table = table;
+    }
+
+
+    public void setStopWhenDecided(boolean stopWhenDecided) {
+        // ends the search early once the most visited move can't be overtaken in the time left (see TimeManager)
+        // the play-outs left are estimated from the root's visit rate, so they include any other workers' too
+        this.stopWhenDecided = stopWhenDecided;
+    }
+
+    public void setBudget(NodeBudget budget) {
+        // limits the no. of nodes in the tree (parallel searches give every worker the same budget)
+        this.budget = budget;
+    }
+
 
     public Action search(Board board, TreeNode currentRoot) {
         // search for the next move from the current board state
@@ -76,98 +123,85 @@ public class MCTS {
         // copies tree root
         root = currentRoot;
 
+        // only the top-level search records an event (workers are recorded by their parallel search's event)
+        SearchEvent event = EXPLOIT ? new SearchEvent() : null;
+        if (event != null) event.start();
+
+        // count the starting tree against the budget (workers' budgets are set up by their parallel search)
+        if (budget != null && EXPLOIT) {
+            budget.reset();
+            budget.add(TreeNode.countNodes(root));
+        }
+
         // find simulation time threshold
-        long endTime = System.currentTimeMillis() + TIMEOUT;
-        suspend = false;
+        long startTime = System.currentTimeMillis();
+        long endTime = startTime + TIMEOUT;
+        int startVisits = root.getCount();
+        long nextSync = System.currentTimeMillis() + syncInterval;
+
+        // one working board for the whole search, moved down & back up the tree in place each iteration
+        Board work = new Board(board);
 
         count = 0;
-        while(System.currentTimeMillis() < endTime) {
-            // selects the next node to expand
-            TreeNode selected = select.select(root, board);
-
-            // add virtual loss to selected node
-            selected.addCount(VIRTUAL_LOSS);
-
-            // generate new board for state at the chosen node
-            Board newBoard = new Board(board);
-            Stack<Action> actionStack = new Stack<>();
-            TreeNode tempNode = selected;
-            while (tempNode != root) {
-                actionStack.push(tempNode.getAction());
-                tempNode = tempNode.getParent();
+        prunable = true;
+        syncTime = 0;
+        maxDepth = 0;
+        depthSum = 0;
+        long iterations = 0;
+        // (an interrupt also ends the search, so workers cancelled through their futures don't run on to the timeout)
+        while(!stopped && !Thread.currentThread().isInterrupted() && System.currentTimeMillis() < endTime) {
+            // time a sample of the iterations while the event is being recorded
+            IterationEvent sample = null;
+            if ((iterations++ & (SAMPLE_INTERVAL - 1)) == 0) {
+                sample = new IterationEvent();
+                if (!sample.isEnabled()) sample = null;
             }
-            for (Action a: actionStack)
-                newBoard.applyAction(a);
 
-            // expand selected node with a new child
-            TreeNode expanded = expand.expand(selected, newBoard);
-            if (expanded == null) {
-                selected.addCount(-VIRTUAL_LOSS);
+            if (!iterate(work, root, sample)) {
+                Contention.WASTED_ITERATIONS.increment();
                 continue;
             }
 
-            // apply action from expanded node
-            newBoard.applyAction(expanded.getAction());
-
-            // simulate playout until the game ends
-            Player nextPlayer = expanded.getAction().getPlayer();
-            while (newBoard.checkWin() == Player.NONE) {
-                // swap player for the next move
-                if (nextPlayer == Player.RED) nextPlayer = Player.BLUE;
-                else nextPlayer = Player.RED;
-
-                // apply the next playout action to the board
-                Action next = playout.nextMove(newBoard, nextPlayer);
-                newBoard.applyAction(next);
-            }
-
-            // back-propagate from the expanded node back to the root
-            Player winner = newBoard.checkWin();
-            tempNode = expanded;
-            while (tempNode != root) {
-                // update statistics for current node
-                if (tempNode.getAction().getPlayer() == winner) tempNode.addPayoff(1);
-                tempNode.addCount(1);
+            count++;
 
-                tempNode = tempNode.getParent();
+            // stop once the move is decided
+            if (stopWhenDecided && (count & (DECIDED_INTERVAL - 1)) == 0) {
+                long now = System.currentTimeMillis();
+                long elapsed = Math.max(now - startTime, 1);
+                long remainingPlayouts = (long) (root.getCount() - startVisits) * (endTime - now) / elapsed;
+                if (TimeManager.isDecided(root, remainingPlayouts)) break;
             }
 
-            // update statistics for root
-            if (tempNode.getAction().getPlayer() == winner) tempNode.addPayoff(1);
-            tempNode.addCount(1);
-
-            // remove virtual loss from selected node
-            selected.addCount(-VIRTUAL_LOSS);
+            // safe point for sharing statistics with the other workers (never waits for them)
+            if (sync != null && System.currentTimeMillis() >= nextSync) {
+                SyncEvent syncEvent = new SyncEvent();
+                syncEvent.begin();
+                long syncStart = System.nanoTime();
+                sync.sync(root);
+                syncTime += System.nanoTime() - syncStart;
+                syncEvent.playouts = count;
+                syncEvent.commit();
+                nextSync = System.currentTimeMillis() + syncInterval;
+            }
+        }
 
-            count++;
+        if (budget != null && EXPLOIT && LOG)
+            System.out.println(budget.getNodes() + " nodes, " + budget.getPrunedNodes() + " pruned, "
+                    + budget.getRefused() + " expansions refused");
 
-            // suspends simulation
-            if (suspend) {
-                // tracks how long the simulation is suspended
-                long suspendStart = System.currentTimeMillis();
-
-                // thread waits
-                synchronized (this) {
-                    this.notify();
-                    try {
-                        this.wait();
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-
-                // replace partial tree with new tree
-                root = new TreeNode(null, newRoot);
-
-                // adds suspend duration to end time
-                long suspendTime = System.currentTimeMillis() - suspendStart;
-                endTime += suspendTime;
+        if (event != null) {
+            event.playouts = count;
+            if (budget != null) {
+                event.prunedNodes = budget.getPrunedNodes();
+                event.refusedExpansions = budget.getRefused();
             }
+            event.finish("MCTS", 1, root, maxDepth, depthSum);
         }
 
         if (EXPLOIT) {
             // pick action to take
-            TreeNode chosen = exploit.exploit(root);
+            TreeNode chosen = exploit.exploit(root, rand);
+            if (chosen == null) return null;  // (stopped before anything was expanded)
             if (LOG) {
                 System.out.println("Chosen:  visited " + chosen.getCount() + " times, won " + chosen.getPayoff());
                 System.out.println("Action: " + chosen.getAction().getPlayer() + "; " + chosen.getAction().toString());
@@ -181,25 +215,150 @@ public class MCTS {
     }
 
 
+    public boolean iterate(Board board, TreeNode root) {
+        // runs one select, expand, playout & back-propagate iteration on the tree below root
+        // board is the position at root, & is used as the working board (it's back at root's position afterwards)
+        // returns false if nothing could be expanded
+        // once the budget is used up, the tree is pruned first, or the play-out starts from the selected node
+        return iterate(board, root, null);
+    }
+
+    private boolean iterate(Board board, TreeNode root, IterationEvent sample) {
+        // times each phase into sample, if there is one
+        long phaseStart = 0;
+        if (sample != null) {
+            sample.begin();
+            phaseStart = System.nanoTime();
+        }
+
+        int rootMoves = board.getMoveCount();
+
+        // make room in the tree if it is over budget (before selecting, so no path into the tree is held)
+        if (prunable && budget != null && budget.shouldPrune(root)) {
+            // (if only a few nodes are prunable, later prunes would walk the tree for little gain, so stop trying)
+            prunable = budget.prune(root);
+            select.pruned(root);
+        }
+
+        // selects the next node to expand (moving the board down to its position)
+        TreeNode selected = select.select(root, board, rand);
+        if (selected == null) {
+            board.undoTo(rootMoves);
+            return false;
+        }
+
+        // add virtual loss to selected node
+        selected.addCount(VIRTUAL_LOSS);
+
+        int depth = board.getMoveCount() - rootMoves;
+
+        if (sample != null) {
+            long now = System.nanoTime();
+            sample.selectTime = now - phaseStart;
+            sample.depth = depth;
+            phaseStart = now;
+        }
+
+        // expand selected node with a new child, if the budget has room for one
+        TreeNode expanded;
+        if (budget == null || budget.reserve()) {
+            expanded = expand.expand(selected, board, rand);
+            if (expanded == null) {
+                if (budget != null) budget.release();
+                selected.addCount(-VIRTUAL_LOSS);
+                board.undoTo(rootMoves);
+                return false;
+            }
+
+            select.expanded(selected, expanded, board);
+
+            // apply action from expanded node
+            board.applyAction(expanded.getAction());
+        }
+        else expanded = selected;  // out of room, so play out from the selected node without growing the tree
+
+        depthSum += depth;
+        if (depth > maxDepth) maxDepth = depth;
+
+        int expandedMoves = board.getMoveCount();
+
+        if (sample != null) {
+            long now = System.nanoTime();
+            sample.expandTime = now - phaseStart;
+            phaseStart = now;
+        }
+
+        // simulate playout until the game ends, then take the playout's moves back
+        Player winner = playout.playout(board, expanded.getAction().getPlayer(), rand);
+        board.undoTo(expandedMoves);
+
+        if (sample != null) {
+            long now = System.nanoTime();
+            sample.playoutTime = now - phaseStart;
+            phaseStart = now;
+        }
+
+        // back-propagate from the expanded node back to the root, undoing each node's action on the way up
+        TreeNode tempNode = expanded;
+        while (tempNode != root) {
+            // update statistics for current node (count & payoff in one atomic update)
+            int win = tempNode.getAction().getPlayer() == winner ? 1 : 0;
+            tempNode.addStats(1, win);
+
+            // update shared statistics for the node's position (the board is still at it)
+            if (table != null) {
+                table.add(TranspositionTable.key(board.getHash(), tempNode.getAction().getPlayer()), 1, win);
+            }
+
+            board.undo();
+            tempNode = tempNode.getParent();
+        }
+
+        // update statistics for root
+        tempNode.addStats(1, tempNode.getAction().getPlayer() == winner ? 1 : 0);
+
+        // remove virtual loss from selected node
+        selected.addCount(-VIRTUAL_LOSS);
+
+        if (sample != null) {
+            sample.backpropTime = System.nanoTime() - phaseStart;
+            sample.commit();
+        }
+
+        return true;
+    }
+
+
     public TreeNode getTree() {
         // returns root of the partial tree
         return this.root;
     }
 
-    public void setNewTree(TreeNode root) {
-        this.newRoot = root;
+    public void setSync(RootStatsBoard.WorkerSync sync, int interval) {
+        // periodically publishes & folds in top-ply statistics during the search
+        this.sync = sync;
+        this.syncInterval = interval;
     }
 
     public int getCount() {
         return this.count;
     }
 
+    public long getSyncTime() {
+        return this.syncTime;
+    }
+
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
 
-    public void suspend() {
-        this.suspend = true;
+    public long getDepthSum() {
+        return this.depthSum;
     }
 
-    public void resume() {
-        this.suspend = false;
+
+    public void stop() {
+        // ends the search after the current iteration
+        this.stopped = true;
     }
 }
@@ -1,11 +1,15 @@
 package mcts;
 
+import mcts.policies.*;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 class MCTSAgent {
     public static String HOST = "127.0.0.1";
@@ -16,12 +20,81 @@ class MCTSAgent {
     private BufferedReader in;
 
     private String colour = "R";
+    private boolean swapped = false;  // whether either player has swapped (the board strings don't show it)
     private int turn = 0;
     private int boardSize = 11;
 
 
-    protected final int timeout = 5000;  // time to spend simulating each turn (in ms)
+    protected final int timeout = 5000;  // average time to spend simulating each turn (in ms)
+
+    protected final boolean LOG = true;  // whether searches log their statistics each turn
+
+    // whether to search on a compact array-backed copy of the tree (about two thirds of the memory of TreeNodes, but
+    // slower to search), which can be set with -Dmcts.arena=true
+    protected final boolean ARENA = Boolean.getBoolean("mcts.arena");
+
+    private final int TYPICAL_MOVES = 30;  // moves we make in a typical game, so the game time averages out to timeout
+
+    // time for the whole game, which can be set with -Dmcts.gameTime=<ms>
+    protected final TimeManager time = new TimeManager(Long.getLong("mcts.gameTime", (long) timeout * TYPICAL_MOVES));
+
+    protected int moveTime;  // time in ms the time manager gave the current move's search
+
+    protected TreeNode tree;  // searched tree, narrowed to our last move so the next search can reuse it
+
+    // whether to keep searching on the opponent's time, which can be set with -Dmcts.ponder=true
+    private final boolean PONDER = Boolean.getBoolean("mcts.ponder");
+
+    private final int PONDER_TIMEOUT = Integer.MAX_VALUE;  // pondering runs until the opponent's move arrives
+
+    protected volatile Runnable stopSearch;  // ends the running search early (set by runSearch, for pondering)
+
+    private Thread ponderer;  // background search from the position after our move (null when not pondering)
+
+    private SearchExecutor executor;  // worker pool for parallel searches, started on first use & kept for the game
+
+    // most tree nodes a search can hold, which can be set with -Dmcts.nodes=<n> (null for no limit)
+    // the least visited subtrees are pruned to stay under it, or with -Dmcts.prune=false the tree just stops growing
+    protected final NodeBudget budget = Long.getLong("mcts.nodes") == null ? null : new NodeBudget(
+            Long.getLong("mcts.nodes"),
+            Boolean.parseBoolean(System.getProperty("mcts.prune", "true")) ? NodeBudget.Mode.PRUNE : NodeBudget.Mode.STOP
+    );
+
+    // opening book built by OpeningBookBuilder, which can be set with -Dmcts.book=<file>
+    // (mapped once at startup; null if unset or it couldn't be opened)
+    private final OpeningBook book = openBook(System.getProperty("mcts.book"));
+
+    // directory to save each move's searched tree to, which can be set with -Dmcts.snapshots=<dir>
+    private final String SNAPSHOTS = System.getProperty("mcts.snapshots");
 
+    // saved tree to start the search from when its position comes up, which can be set with -Dmcts.warmStart=<file>
+    // (loaded once at startup, & dropped once used; null if unset or it couldn't be loaded)
+    private TreeSnapshot.Saved warmStart = loadWarmStart(System.getProperty("mcts.warmStart"));
+
+    private CompletableFuture<Void> snapshot;  // last snapshot queued for writing (null if none)
+
+
+    private static OpeningBook openBook(String file) {
+        // a missing or corrupt book only loses the book moves, so the agent still plays
+        if (file == null) return null;
+        try {
+            return OpeningBook.open(file);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("ERROR: Could not open opening book " + file + " (" + e + "), playing without it.");
+            return null;
+        }
+    }
+
+    private static TreeSnapshot.Saved loadWarmStart(String file) {
+        // a missing or corrupt snapshot only loses the warm start, so the agent still plays
+        if (file == null) return null;
+        try {
+            return TreeSnapshot.load(file);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("ERROR: Could not load warm start " + file + " (" + e + "), starting cold.");
+            return null;
+        }
+    }
 
     private void Connect() throws UnknownHostException, IOException{
         s = new Socket(HOST, PORT);
@@ -67,11 +140,16 @@ class MCTSAgent {
             }
         }
 
+        stopPondering();
+        if (snapshot != null) snapshot.join();  // (snapshots are written in order, so this waits for all of them)
+
         try{
             closeConnection();
         } catch (IOException e){
             System.out.println("ERROR: Connection was already closed.");
         }
+
+        if (executor != null) executor.close();
     }
 
     private boolean interpretMessage(String s){
@@ -92,14 +170,17 @@ class MCTSAgent {
                         board += line;
                         if (i < boardSize - 1) board += ",";
                     }
-                    makeMove(board);
+                    makeMove(board, null);
                 }
                 break;
 
             case "CHANGE":
                 if (msg[3].equals("END")) return false;
-                if (msg[1].equals("SWAP")) colour = opp(colour);
-                if (msg[3].equals(colour)) makeMove(msg[2]);
+                if (msg[1].equals("SWAP")) {
+                    colour = opp(colour);
+                    swapped = true;
+                }
+                if (msg[3].equals(colour)) makeMove(msg[2], msg[1]);
                 break;
 
             default:
@@ -109,29 +190,161 @@ class MCTSAgent {
         return true;
     }
 
-    private void makeMove(String board){
+    private void makeMove(String board, String lastMove){
+        long moveStart = System.currentTimeMillis();
+
+        // finish pondering, which leaves tree as the pondered tree (still rooted at our last move)
+        stopPondering();
+
         // convert colour string to player object
         // root node represents board before making new move, so player at root should be the opponent
         Player p;
         if (colour.equals("R")) p = Player.BLUE;
         else p = Player.RED;
 
-        // convert board string to board object
+        // convert board string to board object, at the real turn (every turn places a piece, except a swap)
         Board b = new Board(board);
+        b.setTurnCount(boardSize * boardSize - b.getEmptyCount() + (swapped ? 1 : 0));
 
-        // apply MCTS & send resulting action
-        Action a = runSearch(b, p);
+        // play forced & book moves straight away (the tree can't be reused after them, as it wasn't searched)
+        Player us = p == Player.RED ? Player.BLUE : Player.RED;
+        Action instant = TimeManager.forcedMove(b, us);
+        if (instant == null && book != null)
+            instant = book.choose(b, us, b.isSwapAvailable());
+        if (instant != null) {
+            tree = null;
+            sendMessage(instant.toString());
+            time.used(System.currentTimeMillis() - moveStart);
+            startPondering(b, instant);
+            return;
+        }
+
+        // reuse the subtree for the opponent's reply to our last move, if it was explored
+        // (a swap changes the colour of every piece, so the tree can't be reused after one)
+        TreeNode root = null;
+        if (tree != null && lastMove != null && !lastMove.equals("SWAP")) {
+            String[] coords = lastMove.split(",");
+            root = findChild(tree, Action.of(p, Integer.parseInt(coords[0]), Integer.parseInt(coords[1])));
+        }
+
+        // otherwise start from the saved tree, if it was saved for this position
+        if (root == null && warmStart != null && warmStart.getPiecesHash() == b.getPiecesHash()
+                && warmStart.getRoot().getAction().getPlayer() == p) {
+            root = warmStart.getRoot();
+            warmStart = null;
+        }
+
+        if (root == null) root = new TreeNode(p);
+        tree = null;
+
+        // apply MCTS for the time this move is given & send resulting action
+        moveTime = time.allocate(b);
+        Action a = runSearch(b, root);
         sendMessage(a.toString());
+        time.used(System.currentTimeMillis() - moveStart);
+
+        // save the searched tree in the background (searches copy their starting tree, so it won't change)
+        if (SNAPSHOTS != null && tree != null) snapshot = saveSnapshot(tree, b);
+
+        // keep only the subtree for the move we made
+        if (tree != null && !a.isSwap()) tree = findChild(tree, a);
+        else tree = null;
+
+        startPondering(b, a);
+    }
+
+    private CompletableFuture<Void> saveSnapshot(TreeNode tree, Board b) {
+        // a failed write only loses the snapshot, so it is logged on the writer thread & the agent plays on
+        // (the returned future always completes normally, so it can be joined safely)
+        String file = Path.of(SNAPSHOTS, "turn-" + turn + ".tree").toString();
+        return TreeSnapshot.writeAsync(tree, b, file).exceptionally(e -> {
+            System.out.println("ERROR: Could not save snapshot " + file + " (" + e.getCause() + ").");
+            return null;
+        });
+    }
+
+    private void startPondering(Board b, Action a) {
+        // searches the position after our move a in the background, until the opponent's reply arrives
+        // (the search runs on a copy of tree, & sets tree to the pondered tree when it's stopped)
+        if (!PONDER || a.isSwap()) return;
+
+        Board after = new Board(b);
+        after.applyAction(a);
+        if (after.checkWin() != Player.NONE) return;
+
+        TreeNode root = tree != null ? tree : new TreeNode(a.getPlayer());
+        moveTime = PONDER_TIMEOUT;
+        stopSearch = null;
+        ponderer = new Thread(() -> runSearch(after, root), "ponder");
+        ponderer.setDaemon(true);
+        ponderer.start();
+    }
+
+    private void stopPondering() {
+        if (ponderer == null) return;
+
+        // the search may not have been created yet, so keep asking until the thread ends
+        try {
+            while (ponderer.isAlive()) {
+                Runnable stop = stopSearch;
+                if (stop != null) stop.run();
+                ponderer.join(10);
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        ponderer = null;
     }
 
-    protected Action runSearch(Board b, Player p) {
+    private static TreeNode findChild(TreeNode node, Action a) {
+        // gets the child of node for the given action, or null if it wasn't expanded
+        for (TreeNode child: node.getChildren())
+            if (child.getAction().equals(a)) return child;
+        return null;
+    }
+
+    protected Action runSearch(Board b, TreeNode root) {
         // method for running MCTS, can be overridden by subclasses
+        // root may still be attached to the previous turn's tree, so implementations search on a copy
+        // & set tree to the root they searched from
+        // implementations also set stopSearch to their search's stop, so pondering can be ended
+        // (when pondering, this runs on a background thread & the returned action is ignored)
+
+        // instantiate MCTS class, sharing statistics between transposed positions
+        MCTS mcts = new MCTS(moveTime, LOG);
+        mcts.setStopWhenDecided(true);
+        if (budget != null) mcts.setBudget(budget);
+        stopSearch = mcts::stop;
+        TranspositionTable table = new TranspositionTable();
+        mcts.initPolicies(
+                new UCTSelectTransposition(table),
+                new RandomExpand(),
+                new RandomFillPlayout(),
+                new WinRateExploit()
+        );
+        mcts.setTranspositionTable(table);
+
+        // run the search on a copy of the tree (frees the rest of the old tree)
+        if (ARENA) {
+            NodeArena arena = new NodeArena(root);
+            Action a = mcts.search(b, arena.getRoot());
+            if (LOG) System.out.println(arena.size() + " nodes, " + arena.getBytes() / 1024 + " KB");
 
-        // instantiate MCTS class
-        MCTS mcts = new MCTS(timeout, true);
+            tree = arena.getRoot();
+            return a;
+        }
+
+        TreeNode copy = new TreeNode(null, root);
+        Action a = mcts.search(b, copy);
+        tree = copy;
+        return a;
+    }
 
-        // return result of the search
-        return mcts.search(b, new TreeNode(p));
+    protected SearchExecutor getExecutor() {
+        // thread count can be set with -Dmcts.threads=<n>, & virtual threads enabled with -Dmcts.virtual=true
+        if (executor == null)
+            executor = new SearchExecutor(SearchExecutor.defaultThreadCount(), Boolean.getBoolean("mcts.virtual"));
+        return executor;
     }
 
     public static String opp(String c){
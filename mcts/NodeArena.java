@@ -0,0 +1,411 @@
+package mcts;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class NodeArena {
+    // compact tree store which keeps every node's data in primitive arrays
+    // nodes are addressed by index, children are linked through first child / next sibling
+    // each node's hot fields are packed into STRIDE consecutive longs, so scoring a child (its statistics, action &
+    // next sibling) touches one place in memory rather than one column per field
+    // 29 bytes per node (plus the untried moves of expanded nodes), compared to around 100 for a TreeNode
+    // nodes are only wrapped in TreeNode views when a caller needs one (the selected path, a new child, a parent),
+    // & the views aren't kept, so the policies score children straight from the arrays (TreeNode.getChildStats)
+    // not thread-safe, so only for trees owned by a single search thread (MCTS & RootMCTS)
+
+    private static final int NONE = -1;  // null index
+
+    private static final int ROOT = 0;
+
+    // longs per node, at node * STRIDE:
+    //   STATS: count & payoff, packed as in TreeNode
+    //   LINKS: next sibling (high 32 bits), child count (16 bits), the action's Action.getIndex() (low 16 bits)
+    //   TREE:  parent (high 32 bits), first child (low 32 bits)
+    private static final int STRIDE = 3;
+    private static final int STATS = 0, LINKS = 1, TREE = 2;
+
+    private int size;  // no. of nodes in use
+
+    private long[] data;  // STRIDE longs per node
+
+    private byte[][] untried;  // each node's untried moves (null until its first expansion)
+
+    private byte[] tried;  // no. of moves taken from untried
+
+    private long untriedBytes;  // memory used by the untried move arrays
+
+    private final TreeNode root;  // the root's view, kept so it is the same object on every access
+
+
+    public NodeArena(Player player) {
+        this(new TreeNode(player), 1 << 16);
+    }
+
+    public NodeArena(TreeNode oldRoot) {
+        // copies an existing (sub)tree into a new arena, with oldRoot as the root
+        this(oldRoot, 1 << 16);
+    }
+
+    public NodeArena(TreeNode oldRoot, int initialCapacity) {
+        data = new long[initialCapacity * STRIDE];
+        untried = new byte[initialCapacity][];
+        tried = new byte[initialCapacity];
+
+        allocate(NONE, encode(oldRoot.getAction()));
+        root = new ArenaNode(ROOT);
+
+        long stats = oldRoot.getStats();
+        root.addStats(TreeNode.countOf(stats), TreeNode.payoffOf(stats));
+        for (TreeNode child: oldRoot.getChildren())
+            root.addChild(child);
+    }
+
+
+    public TreeNode getRoot() {
+        return root;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getBytes() {
+        // memory used by the node data (including spare capacity) & the untried move arrays
+        // (assumes compressed references)
+        return (long) tried.length * (STRIDE * 8 + 4 + 1) + untriedBytes;
+    }
+
+
+    private int allocate(int parentIndex, short encodedMove) {
+        // adds a new node as the first child of parentIndex & returns its index
+        if (size == tried.length) grow();
+
+        int i = size++;
+        untried[i] = null;
+        tried[i] = 0;
+
+        int next = NONE;
+        if (parentIndex != NONE) {
+            next = firstChild(parentIndex);
+            setFirstChild(parentIndex, i);
+            setChildCount(parentIndex, childCount(parentIndex) + 1);
+        }
+
+        data[i * STRIDE + STATS] = 0;
+        data[i * STRIDE + LINKS] = links(next, 0, encodedMove);
+        data[i * STRIDE + TREE] = tree(parentIndex, NONE);
+        return i;
+    }
+
+    private void grow() {
+        int capacity = tried.length * 2;
+        data = Arrays.copyOf(data, capacity * STRIDE);
+        untried = Arrays.copyOf(untried, capacity);
+        tried = Arrays.copyOf(tried, capacity);
+    }
+
+
+    // accessors for the packed fields
+
+    private static long links(int nextSibling, int childCount, short move) {
+        return ((long) nextSibling << 32) | ((long) (childCount & 0xFFFF) << 16) | (move & 0xFFFF);
+    }
+
+    private static long tree(int parent, int firstChild) {
+        return ((long) parent << 32) | (firstChild & 0xFFFFFFFFL);
+    }
+
+    private short move(int i) {
+        return (short) data[i * STRIDE + LINKS];
+    }
+
+    private int childCount(int i) {
+        return (int) (data[i * STRIDE + LINKS] >>> 16) & 0xFFFF;
+    }
+
+    private void setChildCount(int i, int count) {
+        long links = data[i * STRIDE + LINKS];
+        data[i * STRIDE + LINKS] = (links & ~(0xFFFFL << 16)) | ((long) count << 16);
+    }
+
+    private int nextSibling(int i) {
+        return (int) (data[i * STRIDE + LINKS] >> 32);
+    }
+
+    private int parent(int i) {
+        return (int) (data[i * STRIDE + TREE] >> 32);
+    }
+
+    private int firstChild(int i) {
+        return (int) data[i * STRIDE + TREE];
+    }
+
+    private void setFirstChild(int i, int child) {
+        data[i * STRIDE + TREE] = tree(parent(i), child);
+    }
+
+
+    private long prune(int node, int minVisits, long boundaryNodes, int keepPlies) {
+        // removes every subtree more than keepPlies below node whose root has fewer than minVisits visits (& up to
+        // boundaryNodes more whose root has exactly minVisits), then compacts the nodes in place & returns the no.
+        // of nodes removed
+        // parents are always allocated before their children, so single forward passes see every parent first,
+        // & kept nodes keep their order (so the root stays at index 0, but views of other nodes are invalidated)
+
+        // mark the removed nodes, using depth below node (-1 outside its subtree)
+        int[] depth = new int[size];
+        boolean[] removed = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            int p = parent(i);
+            if (i == node) depth[i] = 0;
+            else depth[i] = p == NONE || depth[p] < 0 ? -1 : depth[p] + 1;
+
+            int visits = TreeNode.countOf(data[i * STRIDE + STATS]);
+            boolean prunable = depth[i] > keepPlies
+                    && (visits < minVisits || (visits == minVisits && boundaryNodes > 0));
+            removed[i] = p != NONE && (removed[p] || prunable);
+            if (!removed[i]) continue;
+            if (!removed[p] && visits == minVisits) boundaryNodes--;
+
+            // drop the node's untried actions, & its parent's if the parent is kept (they're rebuilt from the
+            // remaining children on its next expansion, so the removed move can be expanded again)
+            if (untried[i] != null) untriedBytes -= 16 + untried[i].length;
+            if (!removed[p] && untried[p] != null) {
+                untriedBytes -= 16 + untried[p].length;
+                untried[p] = null;
+                tried[p] = 0;
+            }
+        }
+
+        // slide the kept nodes down, reusing depth as the map from old to new index
+        int[] index = depth;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (removed[i]) continue;
+            index[i] = kept;
+            int p = parent(i);
+            data[kept * STRIDE + STATS] = data[i * STRIDE + STATS];
+            data[kept * STRIDE + LINKS] = links(NONE, 0, move(i));
+            data[kept * STRIDE + TREE] = tree(p == NONE ? NONE : index[p], NONE);
+            untried[kept] = untried[i];
+            tried[kept] = tried[i];
+            kept++;
+        }
+
+        // relink the children (in the same order as before)
+        for (int i = 0; i < kept; i++) {
+            int p = parent(i);
+            if (p == NONE) continue;
+            data[i * STRIDE + LINKS] = links(firstChild(p), 0, move(i));
+            setFirstChild(p, i);
+            setChildCount(p, childCount(p) + 1);
+        }
+
+        Arrays.fill(untried, kept, size, null);  // (so the removed nodes' arrays can be collected)
+
+        long removedCount = size - kept;
+        size = kept;
+        return removedCount;
+    }
+
+    private TreeNode view(int i) {
+        // gets a TreeNode adapter for the given index (the root's is kept, as searches compare nodes with it)
+        if (i == NONE) return null;
+        return i == ROOT ? root : new ArenaNode(i);
+    }
+
+    private static short encode(Action a) {
+        return (short) a.getIndex();
+    }
+
+    private static Action decode(short m) {
+        return Action.byIndex(m);
+    }
+
+
+
+    private class ArenaNode extends TreeNode {
+        // lightweight TreeNode view onto a single arena index, so the policies can run unchanged
+
+        private final int index;
+
+
+        private ArenaNode(int index) {
+            this.index = index;
+        }
+
+
+        @Override
+        public Action getAction() {
+            return decode(move(index));
+        }
+
+        @Override
+        public int getCount() {
+            return countOf(data[index * STRIDE + STATS]);
+        }
+
+        @Override
+        public void addCount(int delta) {
+            addStats(delta, 0);
+        }
+
+        @Override
+        public int getPayoff() {
+            return payoffOf(data[index * STRIDE + STATS]);
+        }
+
+        @Override
+        public void addPayoff(int delta) {
+            addStats(0, delta);
+        }
+
+        @Override
+        public long getStats() {
+            return data[index * STRIDE + STATS];
+        }
+
+        @Override
+        public void addStats(int countDelta, int payoffDelta) {
+            data[index * STRIDE + STATS] += pack(countDelta, payoffDelta);
+        }
+
+        @Override
+        public TreeNode getParent() {
+            return view(parent(index));
+        }
+
+        @Override
+        public List<TreeNode> getChildren() {
+            return new ChildList(index);
+        }
+
+        @Override
+        public int getChildStats(long[] stats, short[] actions) {
+            // reads the children straight from the arrays, without making their views
+            int n = 0;
+            for (int child = firstChild(index); child != NONE; child = nextSibling(child)) {
+                stats[n] = data[child * STRIDE + STATS];
+                actions[n] = move(child);
+                n++;
+            }
+            return n;
+        }
+
+        @Override
+        public TreeNode getChild(int i) {
+            int child = firstChild(index);
+            for (int n = 0; n < i; n++) child = nextSibling(child);
+            return view(child);
+        }
+
+        @Override
+        public void addChild(TreeNode child) {
+            // copies the given subtree into the arena
+            TreeNode copy = expandChild(child.getAction());
+            long stats = child.getStats();
+            copy.addStats(countOf(stats), payoffOf(stats));
+            for (TreeNode grandchild: child.getChildren())
+                copy.addChild(grandchild);
+        }
+
+        @Override
+        public TreeNode expandChild(Action action) {
+            return view(allocate(index, encode(action)));
+        }
+
+        @Override
+        public byte[] getUntried() {
+            return untried[index];
+        }
+
+        @Override
+        public int getTried() {
+            return tried[index];
+        }
+
+        @Override
+        public boolean setUntried(byte[] moves) {
+            if (untried[index] != null) return false;
+            untried[index] = moves;
+            untriedBytes += 16 + moves.length;  // array header + contents
+            return true;
+        }
+
+        @Override
+        public int takeUntried() {
+            byte[] moves = untried[index];
+            if (moves == null || tried[index] >= moves.length) return -1;
+            return moves[tried[index]++];
+        }
+
+        @Override
+        public long prune(int minVisits, long boundaryNodes, int keepPlies) {
+            return NodeArena.this.prune(index, minVisits, boundaryNodes, keepPlies);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            // (views are made on each access, so the same node can have several)
+            if (this == o) return true;
+            if (!(o instanceof ArenaNode)) return false;
+            return index == ((ArenaNode) o).index;
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+    }
+
+
+
+    private class ChildList extends AbstractList<TreeNode> {
+        // read-only list view of a node's children
+
+        private final int node;
+
+
+        private ChildList(int node) {
+            this.node = node;
+        }
+
+
+        @Override
+        public TreeNode get(int i) {
+            if (i < 0 || i >= childCount(node)) throw new IndexOutOfBoundsException(i);
+            int child = firstChild(node);
+            for (int n = 0; n < i; n++) child = nextSibling(child);
+            return view(child);
+        }
+
+        @Override
+        public int size() {
+            return childCount(node);
+        }
+
+        @Override
+        public Iterator<TreeNode> iterator() {
+            // walks the sibling links directly rather than calling get(i) each time
+            return new Iterator<>() {
+                private int next = firstChild(node);
+
+                @Override
+                public boolean hasNext() {
+                    return next != NONE;
+                }
+
+                @Override
+                public TreeNode next() {
+                    if (next == NONE) throw new NoSuchElementException();
+                    int current = next;
+                    next = nextSibling(current);
+                    return view(current);
+                }
+            };
+        }
+    }
+}
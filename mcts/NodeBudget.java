@@ -0,0 +1,153 @@
+package mcts;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class NodeBudget {
+    // caps the no. of tree nodes a search holds, so its memory use is predictable
+    // one budget is shared by every worker of a search (root parallel workers' trees count towards the same total)
+    // once it is used up, searches either stop expanding (play-outs then start from the selected node),
+    // or prune the least visited subtrees back down to PRUNE_TO of the budget
+    // shared trees can't be pruned while other threads are in them, so they always stop expanding
+
+    public enum Mode {
+        STOP,  // stop adding nodes
+        PRUNE  // remove the least visited subtrees to make room
+    }
+
+    public static final int BYTES_PER_NODE = 112;  // rough size of a TreeNode with its child list (arena nodes are smaller)
+
+    private final double PRUNE_TO = 0.75;  // fraction of the budget left after pruning
+
+    private final int KEEP_PLIES = 2;  // most plies below the root which are never pruned (the moves & their replies)
+
+    private final double KEEP_FRACTION = 0.25;  // most of a tree the unpruned plies can take (fewer are kept if over)
+
+    private final int HISTOGRAM = 1 << 12;  // visit counts above this are treated as this when picking a threshold
+
+    private final long MAX_NODES;
+
+    private final Mode MODE;
+
+    private final AtomicLong nodes = new AtomicLong();  // nodes currently in the search's tree(s)
+
+    private final LongAdder refused = new LongAdder();  // expansions skipped because the budget was used up
+
+    private final LongAdder prunes = new LongAdder();  // no. of times a tree was pruned
+
+    private final LongAdder prunedNodes = new LongAdder();  // total nodes removed by pruning
+
+
+    public NodeBudget(long maxNodes, Mode mode) {
+        this.MAX_NODES = maxNodes;
+        this.MODE = mode;
+    }
+
+    public static NodeBudget ofBytes(long bytes, Mode mode) {
+        // budget for roughly the given no. of bytes of TreeNodes
+        return new NodeBudget(bytes / BYTES_PER_NODE, mode);
+    }
+
+
+    public void reset() {
+        // clears the counts at the start of a search (the starting trees are then added with add)
+        nodes.set(0);
+        refused.reset();
+        prunes.reset();
+        prunedNodes.reset();
+    }
+
+    public void add(long count) {
+        // counts nodes which already exist (e.g. a tree kept from the last turn)
+        nodes.addAndGet(count);
+    }
+
+    public boolean reserve() {
+        // takes room for one new node, returns false (& counts the refusal) if the budget is used up
+        if (nodes.incrementAndGet() <= MAX_NODES) return true;
+        nodes.decrementAndGet();
+        refused.increment();
+        return false;
+    }
+
+    public void release() {
+        // gives back a reserved node which wasn't added after all
+        nodes.decrementAndGet();
+    }
+
+    public boolean shouldPrune(TreeNode root) {
+        return MODE == Mode.PRUNE && nodes.get() >= MAX_NODES && !root.isShared();
+    }
+
+    public boolean prune(TreeNode root) {
+        // removes the least visited subtrees below root until the total is back down to PRUNE_TO of the budget
+        // with several trees (root parallel workers), each removes its share of the excess by size
+        // returns false if this tree couldn't remove its share (i.e. it is mostly unprunable top plies)
+        // every node is visited at most as often as its parent, so removing each node below a visit threshold
+        // removes whole subtrees, & the threshold can be picked from a histogram of the prunable nodes' visits
+        long total = nodes.get();
+        long excess = total - (long) (MAX_NODES * PRUNE_TO);
+        if (excess <= 0) return true;
+
+        // histograms of visits for each ply down to KEEP_PLIES, & one for every deeper node
+        long[][] histograms = new long[KEEP_PLIES + 2][HISTOGRAM + 1];
+        addToHistograms(root, 0, histograms);
+        long treeNodes = countPlies(histograms, KEEP_PLIES + 1);
+        excess = (long) Math.ceil((double) excess * treeNodes / total);
+
+        // protect fewer plies if they'd take too much of the tree (the root's children are always kept)
+        int keepPlies = KEEP_PLIES;
+        while (keepPlies > 1 && countPlies(histograms, keepPlies) > treeNodes * KEEP_FRACTION) keepPlies--;
+
+        long[] histogram = new long[HISTOGRAM + 1];
+        for (int ply = keepPlies + 1; ply < histograms.length; ply++)
+            for (int v = 0; v <= HISTOGRAM; v++) histogram[v] += histograms[ply][v];
+
+        // every node below threshold is removed, & as many nodes with exactly threshold visits as are still needed
+        // (so the cut lands inside the boundary bucket, rather than taking all of it)
+        int threshold = 0;
+        long below = 0;  // prunable nodes with fewer visits than threshold
+        while (threshold < HISTOGRAM && below + histogram[threshold] < excess) below += histogram[threshold++];
+
+        long removed = root.prune(threshold, excess - below, keepPlies);
+        nodes.addAndGet(-removed);
+        prunes.increment();
+        prunedNodes.add(removed);
+        return removed >= excess;
+    }
+
+    private void addToHistograms(TreeNode node, int depth, long[][] histograms) {
+        if (depth > 0) histograms[Math.min(depth, KEEP_PLIES + 1)][Math.min(node.getCount(), HISTOGRAM)]++;
+        for (TreeNode child: node.getChildren())
+            addToHistograms(child, depth + 1, histograms);
+    }
+
+    private static long countPlies(long[][] histograms, int plies) {
+        // no. of nodes in the first plies below the root (plus the root)
+        long count = 1;
+        for (int ply = 1; ply <= plies; ply++)
+            for (long n: histograms[ply]) count += n;
+        return count;
+    }
+
+
+    public long getMaxNodes() {
+        return MAX_NODES;
+    }
+
+    public long getNodes() {
+        return nodes.get();
+    }
+
+    public long getRefused() {
+        return refused.sum();
+    }
+
+    public long getPrunes() {
+        return prunes.sum();
+    }
+
+    public long getPrunedNodes() {
+        return prunedNodes.sum();
+    }
+}
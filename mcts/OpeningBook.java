@@ -0,0 +1,200 @@
+package mcts;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public class OpeningBook {
+    // read-only table of searched opening positions, built offline by OpeningBookBuilder
+    // the file is memory-mapped, so lookups read straight from the page cache & the book takes no heap
+    // positions are keyed by their canonical hash: the smaller of the pieces' hash & the hash of the board turned
+    // 180 degrees (the only symmetry which keeps each player's edges), with the player to move & swap availability
+    // moves are stored for the canonical orientation, & turned back when the position was looked up rotated
+    //
+    // file layout (big-endian):
+    //   header:  magic (long), version (int), slot count (int, a power of 2), record count (int)
+    //   slots:   key (long, 0 for empty), first record (int), record count (int), open addressed by key
+    //   records: move (short, x * 11 + y or 121 for swap), visits (int), payoff (int)
+
+    private static final long MAGIC = 0x484558424F4F4B31L;  // "HEXBOOK1"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 20;
+
+    private static final int SLOT_BYTES = 16;
+
+    private static final int RECORD_BYTES = 10;
+
+    private static final int CELLS = 121;
+
+    private static final long EMPTY = 0;
+
+    // keys for the player to move & swap being available (fixed seed, so keys are the same in every run)
+    private static final long BLUE_TO_MOVE, SWAP_AVAILABLE;
+
+    static {
+        SplittableRandom keys = new SplittableRandom(0x800CL);
+        BLUE_TO_MOVE = keys.nextLong();
+        SWAP_AVAILABLE = keys.nextLong();
+    }
+
+    private final ByteBuffer buffer;
+
+    private final int mask;  // slot count - 1
+
+    private final int recordStart;  // offset of the first record
+
+    private final int recordCount;
+
+
+    private OpeningBook(ByteBuffer buffer) throws IOException {
+        // checks the header, & that the file is exactly the size its header says
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getLong(0) != MAGIC || buffer.getInt(8) != VERSION)
+            throw new IOException("not an opening book (or an old version)");
+
+        int slots = buffer.getInt(12);
+        this.recordCount = buffer.getInt(16);
+        if (slots <= 0 || Integer.bitCount(slots) != 1 || recordCount < 0 || buffer.capacity()
+                != HEADER_BYTES + (long) slots * SLOT_BYTES + (long) recordCount * RECORD_BYTES)
+            throw new IOException("corrupt opening book");
+
+        this.mask = slots - 1;
+        this.recordStart = HEADER_BYTES + slots * SLOT_BYTES;
+    }
+
+    public static OpeningBook open(String file) throws IOException {
+        // maps the book file (the mapping stays valid once the channel is closed)
+        try (FileChannel channel = FileChannel.open(Path.of(file), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new OpeningBook(buffer);
+        }
+    }
+
+
+    public Action choose(Board board, Player p, boolean swapAvailable) {
+        // gets the book move (the most visited) for p in the position, or null if the position isn't in the book
+        // (swap availability is passed in, so a position can be looked up for either turn it can come up on)
+        long hash = board.getPiecesHash();
+        long rotatedHash = board.getRotatedPiecesHash();
+        boolean rotated = rotatedHash < hash;
+
+        int slot = find(key(rotated ? rotatedHash : hash, p, swapAvailable));
+        if (slot < 0) return null;
+
+        int first = buffer.getInt(slot + 8);
+        int records = buffer.getInt(slot + 12);
+        if (first < 0 || records < 0 || first > recordCount - records) return null;  // (corrupt slot)
+        int bestMove = -1, bestVisits = 0;
+        for (int r = first; r < first + records; r++) {
+            int offset = recordStart + r * RECORD_BYTES;
+            int visits = buffer.getInt(offset + 2);
+            if (visits > bestVisits) {
+                bestVisits = visits;
+                bestMove = buffer.getShort(offset);
+            }
+        }
+
+        if (bestMove < 0 || bestMove > Action.SWAP) return null;  // (no records, or a corrupt move)
+        if (bestMove == Action.SWAP) return Action.swap(p);
+        return Action.of(p, rotated ? CELLS - 1 - bestMove : bestMove);
+    }
+
+    public int size() {
+        // no. of positions in the book
+        int count = 0;
+        for (int slot = 0; slot <= mask; slot++)
+            if (buffer.getLong(HEADER_BYTES + slot * SLOT_BYTES) != EMPTY) count++;
+        return count;
+    }
+
+    private int find(long key) {
+        // offset of the key's slot, or -1 if it isn't in the book (the table is at most half full)
+        int slot = (int) key & mask;
+        while (true) {
+            int offset = HEADER_BYTES + slot * SLOT_BYTES;
+            long k = buffer.getLong(offset);
+            if (k == key) return offset;
+            if (k == EMPTY) return -1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+
+    public static long key(long piecesHash, Player p, boolean swapAvailable) {
+        // book key for the pieces' (canonical) hash, with p to move
+        long key = piecesHash ^ (p == Player.BLUE ? BLUE_TO_MOVE : 0) ^ (swapAvailable ? SWAP_AVAILABLE : 0);
+        return key == EMPTY ? 1 : key;
+    }
+
+    public static void write(String file, List<Entry> entries) {
+        // writes entries as a book file, with the slot table at most half full
+        int slots = Integer.highestOneBit(Math.max(1, entries.size()) * 2) * 2;
+        long[] keys = new long[slots];
+        int[] firsts = new int[slots];
+        int[] counts = new int[slots];
+
+        int records = 0;
+        for (Entry entry: entries) {
+            int slot = (int) entry.key & (slots - 1);
+            while (keys[slot] != EMPTY && keys[slot] != entry.key) slot = (slot + 1) & (slots - 1);
+            if (keys[slot] == entry.key) throw new RuntimeException("position is in the book twice");
+
+            keys[slot] = entry.key;
+            firsts[slot] = records;
+            counts[slot] = entry.moves.length;
+            records += entry.moves.length;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(slots);
+            out.writeInt(records);
+
+            for (int slot = 0; slot < slots; slot++) {
+                out.writeLong(keys[slot]);
+                out.writeInt(firsts[slot]);
+                out.writeInt(counts[slot]);
+            }
+
+            // (records are in the same order as the entries, matching the slots' first record)
+            for (Entry entry: entries)
+                for (int i = 0; i < entry.moves.length; i++) {
+                    out.writeShort(entry.moves[i]);
+                    out.writeInt(entry.visits[i]);
+                    out.writeInt(entry.payoffs[i]);
+                }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+
+    public static class Entry {
+        // one searched position, with its root children's statistics (moves in the canonical orientation)
+
+        private final long key;
+        private final short[] moves;
+        private final int[] visits;
+        private final int[] payoffs;
+
+
+        public Entry(long key, short[] moves, int[] visits, int[] payoffs) {
+            this.key = key;
+            this.moves = moves;
+            this.visits = visits;
+            this.payoffs = payoffs;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package mcts;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class OpeningBookBuilder {
+    // builds an opening book offline, with a long root parallel search of each opening position
+    // every first move is searched (so the book has the swap decision whatever the opening), then the WIDTH most
+    // visited replies from each searched position, up to positions with PLIES stones
+    // positions which are the same after turning the board 180 degrees are only searched once
+    //
+    // run with: java -cp agents mcts.OpeningBookBuilder [time per position in ms]
+    // (-Dbook.out=<file> for the book file, -Dbook.plies=<n> for the most stones in a book position,
+    // -Dbook.width=<n> for the replies followed from each position, -Dbook.seed=<n> to seed the searches)
+
+    private static final int CELLS = 121;
+
+    private final int TIMEOUT;  // time in ms for each position's search
+
+    private final int PLIES = Integer.getInteger("book.plies", 2);
+
+    private final int WIDTH = Integer.getInteger("book.width", 3);
+
+    private final Long SEED = Long.getLong("book.seed");  // null for unseeded searches
+
+
+    public OpeningBookBuilder(int timeout) {
+        this.TIMEOUT = timeout;
+    }
+
+
+    public static void main(String[] args) {
+        OpeningBookBuilder builder = new OpeningBookBuilder(args.length > 0 ? Integer.parseInt(args[0]) : 10000);
+        List<OpeningBook.Entry> entries = builder.build();
+
+        String out = System.getProperty("book.out", "opening.book");
+        OpeningBook.write(out, entries);
+        System.out.println(entries.size() + " positions written to " + out);
+    }
+
+    public List<OpeningBook.Entry> build() {
+        List<OpeningBook.Entry> entries = new ArrayList<>();
+        Set<Long> searched = new HashSet<>();
+
+        // positions are searched a level (no. of stones) at a time, each level's replies making the next
+        List<Board> level = new ArrayList<>();
+        level.add(new Board());
+        Player p = Player.RED;  // player to move at this level (the builder never follows swaps)
+
+        try (SearchExecutor executor = new SearchExecutor(SearchExecutor.defaultThreadCount())) {
+            for (int stones = 0; stones <= PLIES && !level.isEmpty(); stones++) {
+                List<Board> next = new ArrayList<>();
+                for (Board board: level) {
+                    long hash = board.getPiecesHash();
+                    long rotatedHash = board.getRotatedPiecesHash();
+                    boolean rotated = rotatedHash < hash;
+                    long key = OpeningBook.key(rotated ? rotatedHash : hash, p, stones == 1);
+                    if (!searched.add(key)) continue;
+
+                    TreeNode root = search(board, p, executor);
+                    entries.add(entry(key, root, rotated));
+                    System.out.println(entries.size() + " positions searched (" + stones + " stones)");
+
+                    if (stones < PLIES) addReplies(board, root, p, stones == 0, next);
+                }
+
+                level = next;
+                p = p == Player.RED ? Player.BLUE : Player.RED;
+            }
+        }
+
+        return entries;
+    }
+
+
+    private TreeNode search(Board board, Player p, SearchExecutor executor) {
+        // searches the position with p to move, returning the joined tree
+        RootMCTS search = new RootMCTS(false, TIMEOUT, false, executor);
+        if (SEED != null) search.setSeed(SEED);
+        search.search(new Board(board), p == Player.RED ? Player.BLUE : Player.RED);
+        return search.getTree();
+    }
+
+    private OpeningBook.Entry entry(long key, TreeNode root, boolean rotated) {
+        // the root children's statistics, with moves turned to the canonical orientation
+        List<TreeNode> children = root.getChildren();
+        short[] moves = new short[children.size()];
+        int[] visits = new int[children.size()];
+        int[] payoffs = new int[children.size()];
+
+        for (int i = 0; i < children.size(); i++) {
+            Action a = children.get(i).getAction();
+            int move = a.getMoveIndex();
+            moves[i] = (short) (rotated && !a.isSwap() ? CELLS - 1 - move : move);
+
+            long stats = children.get(i).getStats();
+            visits[i] = TreeNode.countOf(stats);
+            payoffs[i] = TreeNode.payoffOf(stats);
+        }
+
+        return new OpeningBook.Entry(key, moves, visits, payoffs);
+    }
+
+    private void addReplies(Board board, TreeNode root, Player p, boolean all, List<Board> next) {
+        // adds the positions after p's moves to be searched next: every move, or the WIDTH most visited
+        // (swaps aren't followed, the book only holds the decision to swap)
+        List<Action> moves = new ArrayList<>();
+        if (all) {
+            byte[] cells = new byte[CELLS];
+            int count = board.getEmptyCells(cells);
+            for (int n = 0; n < count; n++) moves.add(Action.of(p, cells[n]));
+        }
+        else {
+            List<TreeNode> children = new ArrayList<>(root.getChildren());
+            children.removeIf(child -> child.getAction().isSwap());
+            children.sort((a, b) -> Integer.compare(b.getCount(), a.getCount()));
+            for (int i = 0; i < Math.min(WIDTH, children.size()); i++) moves.add(children.get(i).getAction());
+        }
+
+        for (Action a: moves) {
+            Board after = new Board(board);
+            after.applyAction(a);
+            next.add(after);
+        }
+    }
+}
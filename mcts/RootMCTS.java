@@ -1,10 +1,16 @@
 package mcts;
 
+import mcts.events.JoinEvent;
+import mcts.events.SearchEvent;
 import mcts.policies.ExploitPolicy;
 import mcts.policies.WinRateExploit;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 public class RootMCTS {
     // implements root parallelization for MCTS
@@ -12,10 +18,35 @@ public class RootMCTS {
     private final int TIMEOUT;
     private final boolean LOG;
 
-    private final boolean SYNC_TREES;
+    private final boolean SYNC_TREES;  // whether workers share top-ply statistics during the search
+
+    private final int SYNC_INTERVAL = 250;  // time in ms between each worker's syncs
+
+    private final int SYNC_PLIES = RootStatsBoard.MAX_PLIES;  // no. of plies below the root which are shared
+
+    private final int MERGE_PLIES;  // no. of plies below the root to merge (0 merges the whole trees)
 
     private final ExploitPolicy exploit;
-    private List<RootMCTSThread> threads;
+
+    private boolean stopWhenDecided;  // whether workers end the search once the move can't change
+
+    private NodeBudget budget;  // limit on the total size of the workers' trees (null for no limit)
+
+    private boolean arena;  // whether workers search on NodeArena copies of the starting tree instead of TreeNodes
+
+    private SplittableRandom random = new SplittableRandom();  // split into a separate random source for each worker
+    private final SearchExecutor executor;  // long-lived worker pool the searches run on
+    private volatile List<RootMCTSWorker> workers;  // (published once every worker is created, for stop)
+
+    private volatile boolean stopped;  // set to end the search early (stays set, instances are used for one search)
+
+    private TreeNode tree;  // joined tree from the last search
+
+    private int count;  // total simulations in the last search
+
+    private long joinTime;  // time in ns spent joining the trees in the last search
+
+    private long syncTime;  // total time in ns the workers spent syncing in the last search
 
 
     public RootMCTS(int timeout) {
@@ -31,119 +62,125 @@ public class RootMCTS {
     }
 
     public RootMCTS(boolean sync, int timeout, boolean log) {
+        this(sync, timeout, log, SearchExecutor.getDefault());
+    }
+
+    public RootMCTS(boolean sync, int timeout, boolean log, SearchExecutor executor) {
+        this(sync, timeout, log, executor, 0);
+    }
+
+    public RootMCTS(boolean sync, int timeout, boolean log, SearchExecutor executor, int mergePlies) {
+        // only the root's children are needed to pick a move, so the merge can stop after a few plies
+        // (keep at least 2 if the tree is reused next turn)
+        this.MERGE_PLIES = mergePlies;
         this.SYNC_TREES = sync;
         this.TIMEOUT = timeout;
         this.exploit = new WinRateExploit();
         this.LOG = log;
+        this.executor = executor;
     }
 
 
-    private void joinTrees(TreeNode root, TreeNode join) {
-        // aggregates the "join" tree onto the "root" tree
-        // modifies root tree in place
-
-        // accumulate statistics for this node
-        root.addCount(join.getCount());
-        root.addPayoff(join.getPayoff());
-
-        // for each child node of join, look for a matching node in root
-        for (TreeNode joinChild: join.getChildren()) {
-            boolean joined = false;
-            for (TreeNode rootChild: root.getChildren()) {
-                if (rootChild.getAction().equals(joinChild.getAction())) {
-                    // if the current child is already represented in root, join these 2 nodes
-                    joinTrees(rootChild, joinChild);
-                    joined = true;
-                    break;
-                }
-            }
-
-            // if not joined, add a deep copy of the current child to the root tree
-            if (!joined) root.addChild(new TreeNode(root, joinChild));
-        }
+    public static TreeNode joinTrees(TreeNode base, List<TreeNode> trees, int plies) {
+        // merges the trees onto a copy of base, adding each tree's change since base
+        // (every tree started as a copy of base, so base's statistics are only counted once)
+        // children are matched by move number & subtrees are merged in parallel with fork-join
+        // only merges the given no. of plies below the root (0 merges the whole trees)
+        TreeNode root = new TreeNode(null, base);
+        ForkJoinPool.commonPool().invoke(new JoinTask(root, trees, plies > 0 ? plies : -1));
+        return root;
     }
 
-    private void treeDiff(TreeNode root, TreeNode diff) {
-        // finds difference between root & diff trees (i.e. root = root - diff)
-        // modifies root tree in place
-
-        // subtract statistics for this node
-        root.addCount(-diff.getCount());
-        root.addPayoff(-diff.getPayoff());
-
-        // for each child node of diff, look for a matching node in root
-        for (TreeNode diffChild: diff.getChildren()) {
-            boolean matched = false;
-            for (TreeNode rootChild: root.getChildren()) {
-                if (rootChild.getAction().equals(diffChild.getAction())) {
-                    // if the current child is already represented in root, diff these 2 nodes
-                    treeDiff(rootChild, diffChild);
-                    matched = true;
-                    break;
-                }
-            }
 
-            // if not matched, add a deep copy of the current child to the root tree
-            if (!matched) root.addChild(new TreeNode(root, diffChild));
-        }
+    public Action search(Board board, Player p) {
+        return search(board, new TreeNode(p));
     }
 
+    public Action search(Board board, TreeNode start) {
+        // searches from an existing root (e.g. a subtree kept from the previous turn)
+        // every thread starts from a copy of it, so its statistics are subtracted again when joining
 
-    public Action search(Board board, Player p) {
-        // find max threads
-        int threadCount = Runtime.getRuntime().availableProcessors();
-        if (LOG) System.out.println(threadCount + " processors");
-        threads = new ArrayList<>();
+        SearchEvent event = new SearchEvent();
+        event.start();
 
-        // create threads with MCTS instances
-        for (int i = 0; i < threadCount; i++) {
-            threads.add(new RootMCTSThread(board, p, TIMEOUT));
-            threads.get(i).start();
-        }
+        // detached copy of the starting tree (so the rest of the old tree can be freed)
+        TreeNode baseline = new TreeNode(null, start);
 
-        TreeNode prevSync = new TreeNode(null);
-        if (SYNC_TREES) {
-            // sync threads every second
-            long endTime = System.currentTimeMillis() + TIMEOUT - 1000;
-            while (System.currentTimeMillis() < endTime) {
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
+        // one worker per pool thread
+        int threadCount = executor.getThreadCount();
+        if (LOG) System.out.println(threadCount + " threads");
+        List<RootMCTSWorker> workers = new ArrayList<>();
 
-                prevSync = syncThreads(prevSync, p);
-            }
-        }
+        // shared counters for the top plies, which each worker syncs with periodically
+        RootStatsBoard statsBoard = SYNC_TREES ? new RootStatsBoard(SYNC_PLIES, baseline) : null;
 
-        // wait for threads to finish
-        for (RootMCTSThread thread: threads) {
-            try {
-                thread.join();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
+        // every worker starts with its own copy of the starting tree
+        if (budget != null) {
+            budget.reset();
+            budget.add(threadCount * TreeNode.countNodes(baseline));
         }
 
-        // join partial trees
-        int count = 0;
-        long joinStart = System.currentTimeMillis();
-        TreeNode root = new TreeNode(p);
+        // create workers with MCTS instances & start them on the pool
         for (int i = 0; i < threadCount; i++) {
-            long threadStart = System.currentTimeMillis();
-            RootMCTSThread thread = threads.get(i);
-            joinTrees(root, thread.mcts.getTree());
-            count += thread.mcts.getCount();
-            if (LOG) {
-                System.out.print("Thread " + i + ": " + thread.mcts.getCount() + " simulations");
-                System.out.println(", " + (System.currentTimeMillis() - threadStart) + " ms joining");
-            }
+            RootMCTSWorker worker = new RootMCTSWorker(board, baseline, TIMEOUT);
+            worker.mcts.setRandom(random.split());
+            worker.mcts.setBudget(budget);
+            worker.mcts.setStopWhenDecided(stopWhenDecided);
+            worker.arena = arena;
+            if (statsBoard != null) worker.setSync(statsBoard.newWorker(), SYNC_INTERVAL);
+            workers.add(worker);
+        }
+        this.workers = workers;
+        if (stopped) stop();  // (in case the search was stopped while its workers were being created)
+        List<Future<?>> futures = executor.submitAll(workers);
+
+        // wait for workers to finish
+        executor.awaitAll(futures);
+
+        // join partial trees (onto the starting tree, adding each thread's work since then)
+        count = 0;
+        syncTime = 0;
+        int maxDepth = 0;
+        long depthSum = 0;
+        List<TreeNode> trees = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            RootMCTSWorker worker = workers.get(i);
+            trees.add(worker.mcts.getTree());
+            count += worker.mcts.getCount();
+            syncTime += worker.mcts.getSyncTime();
+            maxDepth = Math.max(maxDepth, worker.mcts.getMaxDepth());
+            depthSum += worker.mcts.getDepthSum();
+            if (LOG) System.out.println("Thread " + i + ": " + worker.mcts.getCount() + " simulations");
         }
 
-        System.out.println("\nTotal " + (System.currentTimeMillis() - joinStart) + " ms joining");
+        JoinEvent joinEvent = new JoinEvent();
+        joinEvent.begin();
+        long joinStart = System.nanoTime();
+        TreeNode root = joinTrees(baseline, trees, MERGE_PLIES);
+        joinTime = System.nanoTime() - joinStart;
+        joinEvent.trees = trees.size();
+        joinEvent.plies = MERGE_PLIES;
+        joinEvent.commit();
+
+        if (LOG) System.out.println("\nTotal " + joinTime / 1_000_000 + " ms joining");
+        if (LOG && budget != null)
+            System.out.println(budget.getNodes() + " nodes, " + budget.getPrunedNodes() + " pruned, "
+                    + budget.getRefused() + " expansions refused");
+
+        tree = root;
+
+        event.playouts = count;
+        event.joinTime = joinTime;
+        event.syncTime = syncTime;
+        if (budget != null) {
+            event.prunedNodes = budget.getPrunedNodes();
+            event.refusedExpansions = budget.getRefused();
+        }
+        event.finish(SYNC_TREES ? "RootMCTSSync" : "RootMCTS", threadCount, root, maxDepth, depthSum);
 
         // run exploit policy on joined tree
-        TreeNode chosen = exploit.exploit(root);
+        TreeNode chosen = exploit.exploit(root, random);
+        if (chosen == null) return null;  // (stopped before anything was expanded)
         if (LOG) {
             System.out.println("Chosen:  visited " + chosen.getCount() + " times, won " + chosen.getPayoff());
             System.out.println("Action: " + chosen.getAction().getPlayer() + "; " + chosen.getAction().toString());
@@ -153,65 +190,166 @@ public class RootMCTS {
         return chosen.getAction();
     }
 
-    public TreeNode syncThreads(TreeNode prevSync, Player p) {
-        TreeNode root = new TreeNode(p);
-        for (RootMCTSThread thread: threads) {
-            // suspend thread
-            synchronized (thread.mcts) {
-                thread.mcts.suspend();
-                try {
-                    thread.mcts.wait();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            }
+    public TreeNode getTree() {
+        // returns the joined tree from the last search
+        return tree;
+    }
+
+    public int getCount() {
+        // total simulations over every worker in the last search
+        return count;
+    }
+
+    public long getJoinTime() {
+        return joinTime;
+    }
+
+    public long getSyncTime() {
+        return syncTime;
+    }
+
+    public void setStopWhenDecided(boolean stopWhenDecided) {
+        // each worker stops once the move is decided on its own tree (including synced statistics)
+        this.stopWhenDecided = stopWhenDecided;
+    }
+
+    public void setBudget(NodeBudget budget) {
+        // limits the total no. of nodes over every worker's tree
+        // pruned nodes from the starting tree lose its statistics when joined if they are expanded again,
+        // but only nodes with few visits are pruned
+        this.budget = budget;
+    }
+
+    public void setArena(boolean arena) {
+        // makes workers search on NodeArena copies of the starting tree (TreeNode copies are the default, as they
+        // run more play-outs per second)
+        this.arena = arena;
+    }
+
+    public void setSeed(long seed) {
+        // makes the workers' random sources reproducible (the same seed gives each worker the same stream,
+        // although the searches still depend on thread timing)
+        this.random = new SplittableRandom(seed);
+    }
+
+    public void stop() {
+        // ends the current search early (workers finish their current iteration)
+        // can be called from any thread, even before the search has started its workers
+        stopped = true;
+        List<RootMCTSWorker> workers = this.workers;
+        if (workers != null)
+            for (RootMCTSWorker worker: workers)
+                worker.mcts.stop();
+    }
+
+    private static class JoinTask extends RecursiveAction {
+        // merges matching nodes from every tree into one node of the joined tree, forking for big subtrees
 
-            // finds change since last sync
-            treeDiff(thread.mcts.getTree(), prevSync);
+        private static final long serialVersionUID = 1L;  // (tasks are never serialised, but RecursiveAction is Serializable)
 
-            // join current partial tree
-            joinTrees(root, thread.mcts.getTree());
+        private static final int FORK_THRESHOLD = 1024;  // min. visits for a subtree to be merged as its own task
+
+        private final TreeNode target;  // node in the joined tree (starts with the base tree's statistics)
+
+        private final List<TreeNode> sources;  // matching node from each tree that has one
+
+        private final int plies;  // plies left to merge below target (negative means no limit)
+
+
+        private JoinTask(TreeNode target, List<TreeNode> sources, int plies) {
+            this.target = target;
+            this.sources = sources;
+            this.plies = plies;
         }
 
-        // update tree & resume threads
-        for (RootMCTSThread thread: threads) {
-            synchronized (thread.mcts) {
-                thread.mcts.setNewTree(root);
-                thread.mcts.resume();
-                thread.mcts.notify();
+
+        @Override
+        protected void compute() {
+            // add each source's change since the base (every source includes the base's statistics)
+            long base = target.getStats();
+            int count = -sources.size() * TreeNode.countOf(base);
+            int payoff = -sources.size() * TreeNode.payoffOf(base);
+            for (TreeNode source: sources) {
+                long stats = source.getStats();
+                count += TreeNode.countOf(stats);
+                payoff += TreeNode.payoffOf(stats);
             }
-        }
+            target.addStats(count, payoff);
+
+            if (plies == 0) return;
+
+            // index the target's children & group the sources' children by move number
+            TreeNode[] targetChildren = new TreeNode[Action.MOVES];
+            for (TreeNode child: target.getChildren())
+                targetChildren[child.getAction().getMoveIndex()] = child;
+
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            List<TreeNode>[] grouped = new List[Action.MOVES];
+            int[] visits = new int[Action.MOVES];
+            for (TreeNode source: sources)
+                for (TreeNode child: source.getChildren()) {
+                    int move = child.getAction().getMoveIndex();
+                    if (grouped[move] == null) grouped[move] = new ArrayList<>(sources.size());
+                    grouped[move].add(child);
+                    visits[move] += child.getCount();
+                }
 
-        return root;
+            // merge each child, forking the big subtrees & doing the small ones in this task
+            List<JoinTask> forked = new ArrayList<>();
+            for (int move = 0; move < Action.MOVES; move++) {
+                if (grouped[move] == null) continue;
+
+                TreeNode child = targetChildren[move];
+                if (child == null) child = target.expandChild(grouped[move].get(0).getAction());
+
+                JoinTask task = new JoinTask(child, grouped[move], plies - 1);
+                if (visits[move] >= FORK_THRESHOLD) forked.add(task);
+                else task.compute();
+            }
+            invokeAll(forked);
+        }
     }
 
 
 
-    private static class RootMCTSThread extends Thread {
+    private static class RootMCTSWorker implements Runnable {
 
         private final Board board;
-        private final Player player;
+        private final TreeNode start;
 
         private final MCTS mcts;
 
+        private RootStatsBoard.WorkerSync sync;
+
+        private boolean arena;  // whether to search on a NodeArena copy of the starting tree
 
-        public RootMCTSThread(Board b, Player p, int timeout) {
-            this(b, p, timeout, false);
+
+        public RootMCTSWorker(Board b, TreeNode start, int timeout) {
+            this(b, start, timeout, false);
         }
 
-        public RootMCTSThread(Board b, Player p, int timeout, boolean log) {
+        public RootMCTSWorker(Board b, TreeNode start, int timeout, boolean log) {
             this.mcts = new MCTS(timeout, log, false);
             this.board = b;
-            this.player = p;
+            this.start = start;
+        }
+
+
+        public void setSync(RootStatsBoard.WorkerSync sync, int interval) {
+            this.sync = sync;
+            mcts.setSync(sync, interval);
         }
 
 
         @Override
         public void run() {
-            // run search
-            mcts.search(board, new TreeNode(player));
+            // run search on this thread's own copy of the starting tree
+            mcts.search(board, arena ? new NodeArena(start).getRoot() : new TreeNode(null, start));
+
+            // take the other workers' statistics back out, so only this worker's own are joined
+            if (sync != null) sync.unfold(mcts.getTree());
 
-            // thread terminates
+            // worker returns to the pool
         }
     }
 }
@@ -2,15 +2,20 @@ package mcts;
 
 public class RootMCTSAgent extends MCTSAgent {
 
-    protected final int timeout = 5000;
-
     @Override
-    protected Action runSearch(Board b, Player p) {
+    protected Action runSearch(Board b, TreeNode root) {
         // instantiate RootMCTS class
-        RootMCTS mcts = new RootMCTS(timeout, true);
+        RootMCTS mcts = new RootMCTS(false, moveTime, LOG, getExecutor());
+        mcts.setStopWhenDecided(true);  // (ends early once the move can't change)
+        if (budget != null) mcts.setBudget(budget);
+        mcts.setArena(ARENA);
+        stopSearch = mcts::stop;
+
+        // run the search from the given root & keep the searched tree
+        Action a = mcts.search(b, root);
+        tree = mcts.getTree();
 
-        // return result of the search
-        return mcts.search(b, p);
+        return a;
     }
 
     public static void main(String[] args) {
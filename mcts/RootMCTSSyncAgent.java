@@ -3,12 +3,19 @@ package mcts;
 public class RootMCTSSyncAgent extends MCTSAgent{
 
     @Override
-    protected Action runSearch(Board b, Player p) {
+    protected Action runSearch(Board b, TreeNode root) {
         // instantiate RootMCTS class
-        RootMCTS mcts = new RootMCTS(true, timeout, true);
+        RootMCTS mcts = new RootMCTS(true, moveTime, LOG, getExecutor());
+        mcts.setStopWhenDecided(true);  // (ends early once the move can't change)
+        if (budget != null) mcts.setBudget(budget);
+        mcts.setArena(ARENA);
+        stopSearch = mcts::stop;
 
-        // return result of the search
-        return mcts.search(b, p);
+        // run the search from the given root & keep the searched tree
+        Action a = mcts.search(b, root);
+        tree = mcts.getTree();
+
+        return a;
     }
 
     public static void main(String[] args) {
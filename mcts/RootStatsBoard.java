@@ -0,0 +1,104 @@
+package mcts;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class RootStatsBoard {
+    // lock-free board of counters for the top plies of a root parallel search
+    // each worker publishes what its own tree gained since its last sync & folds in what the others
+    // published, at its own safe points, so no worker is ever paused
+    // nodes are addressed by path (index = parent index * 122 + move + 1, root = 0), so up to 2 plies
+    // below the root fit in a small dense array
+    // stats are packed the same way as TreeNode (count * 2^32 + payoff)
+
+    private static final int MOVES = 122;  // move numbers (121 cells + swap)
+
+    public static final int MAX_PLIES = 2;
+
+    private final AtomicLongArray stats;  // total stats published for each node
+
+    private final int plies;
+
+
+    public RootStatsBoard(int plies, TreeNode base) {
+        // starts with the base tree's stats (every worker's tree starts as a copy of base)
+        this.plies = Math.max(0, Math.min(plies, MAX_PLIES));
+
+        int size = 1;
+        for (int i = 0; i < this.plies; i++) size = size * MOVES + 1;
+        this.stats = new AtomicLongArray(size);
+
+        seed(base, 0, 0);
+    }
+
+
+    public WorkerSync newWorker() {
+        // creates the sync state for a worker (must be called before any worker publishes)
+        return new WorkerSync();
+    }
+
+    private void seed(TreeNode node, int index, int depth) {
+        stats.set(index, node.getStats());
+        if (depth == plies) return;
+
+        for (TreeNode child: node.getChildren())
+            seed(child, childIndex(index, child), depth + 1);
+    }
+
+    private static int childIndex(int index, TreeNode child) {
+        return index * MOVES + child.getAction().getMoveIndex() + 1;
+    }
+
+
+
+    public class WorkerSync {
+        // per-worker state, only used by the worker's own thread
+
+        private final long[] published;  // this worker's stats included in the board (starting with the base)
+
+        private final long[] folded;  // other workers' stats already added to this worker's tree
+
+
+        private WorkerSync() {
+            published = new long[stats.length()];
+            for (int i = 0; i < published.length; i++) published[i] = stats.get(i);
+            folded = new long[stats.length()];
+        }
+
+
+        public void sync(TreeNode root) {
+            // publishes this worker's changes & folds in everyone else's, for the top plies of the tree
+            sync(root, 0, 0);
+        }
+
+        private void sync(TreeNode node, int index, int depth) {
+            long delta = node.getStats() - published[index] - folded[index];
+            long total = stats.addAndGet(index, delta);
+            published[index] += delta;
+
+            long others = total - published[index];
+            long change = others - folded[index];
+            node.addStats(TreeNode.countOf(change), TreeNode.payoffOf(change));
+            folded[index] = others;
+
+            if (depth == plies) return;
+
+            for (TreeNode child: node.getChildren())
+                sync(child, childIndex(index, child), depth + 1);
+        }
+
+        public void unfold(TreeNode root) {
+            // removes other workers' stats from this worker's tree (so the trees can be joined as normal)
+            unfold(root, 0, 0);
+        }
+
+        private void unfold(TreeNode node, int index, int depth) {
+            node.addStats(-TreeNode.countOf(folded[index]), -TreeNode.payoffOf(folded[index]));
+            folded[index] = 0;
+
+            if (depth == plies) return;
+
+            for (TreeNode child: node.getChildren())
+                unfold(child, childIndex(index, child), depth + 1);
+        }
+    }
+}
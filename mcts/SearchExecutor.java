@@ -0,0 +1,148 @@
+package mcts;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SearchExecutor implements AutoCloseable {
+    // long-lived pool of search workers, started once & reused for every search
+    // owned by an agent (or the shared default), so threads aren't created & joined on every move
+    // thread count defaults to the cpus actually available to the process (including cgroup quotas),
+    // & can be overridden with -Dmcts.threads=<n>
+
+    private static SearchExecutor defaultExecutor;
+
+    private final ExecutorService pool;
+
+    private final int threadCount;
+
+    private final boolean virtual;
+
+
+    public SearchExecutor() {
+        this(defaultThreadCount(), false);
+    }
+
+    public SearchExecutor(int threadCount) {
+        this(threadCount, false);
+    }
+
+    public SearchExecutor(int threadCount, boolean virtual) {
+        // virtual threads are only used if the runtime supports them (java 21+), otherwise platform threads
+        this.threadCount = Math.max(threadCount, 1);
+
+        ExecutorService virtualPool = virtual ? newVirtualPool() : null;
+        this.virtual = virtualPool != null;
+        if (virtualPool != null) this.pool = virtualPool;
+        else {
+            AtomicInteger id = new AtomicInteger();
+            this.pool = Executors.newFixedThreadPool(this.threadCount, task -> {
+                Thread worker = new Thread(task, "mcts-worker-" + id.getAndIncrement());
+                worker.setDaemon(true);  // don't keep the agent alive after the game ends
+                return worker;
+            });
+        }
+    }
+
+
+    public static synchronized SearchExecutor getDefault() {
+        // shared executor for searches that aren't given one
+        if (defaultExecutor == null) defaultExecutor = new SearchExecutor();
+        return defaultExecutor;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+
+    public List<Future<?>> submitAll(List<? extends Runnable> tasks) {
+        // starts every task on the pool
+        List<Future<?>> futures = new ArrayList<>(tasks.size());
+        for (Runnable task: tasks)
+            futures.add(pool.submit(task));
+        return futures;
+    }
+
+    public void awaitAll(List<Future<?>> futures) {
+        // waits for every task to finish (cancelling the rest if interrupted)
+        for (Future<?> future: futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                cancel(futures);
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    public void cancel(List<Future<?>> futures) {
+        // interrupts the running tasks (searches check for this, & end after their current iteration)
+        for (Future<?> future: futures)
+            future.cancel(true);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+
+    public static int defaultThreadCount() {
+        // explicit setting first, then available processors capped by any cgroup cpu quota
+        String setting = System.getProperty("mcts.threads");
+        if (setting != null) return Integer.parseInt(setting);
+
+        return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), cgroupCpuLimit()));
+    }
+
+    private static int cgroupCpuLimit() {
+        // reads the cpu quota for this container (cgroup v2, then v1), or MAX_VALUE if there isn't one
+        try {
+            String[] max = Files.readString(Path.of("/sys/fs/cgroup/cpu.max")).strip().split(" ");
+            if (!max[0].equals("max")) return quotaToCpus(Long.parseLong(max[0]), Long.parseLong(max[1]));
+            return Integer.MAX_VALUE;
+        } catch (IOException | RuntimeException e) {
+            // not cgroup v2, try v1
+        }
+
+        try {
+            long quota = Long.parseLong(Files.readString(Path.of("/sys/fs/cgroup/cpu/cpu.cfs_quota_us")).strip());
+            long period = Long.parseLong(Files.readString(Path.of("/sys/fs/cgroup/cpu/cpu.cfs_period_us")).strip());
+            if (quota > 0) return quotaToCpus(quota, period);
+        } catch (IOException | RuntimeException e) {
+            // no cgroup limits available
+        }
+
+        return Integer.MAX_VALUE;
+    }
+
+    private static int quotaToCpus(long quota, long period) {
+        return (int) Math.max(1, (quota + period - 1) / period);
+    }
+
+    private static ExecutorService newVirtualPool() {
+        // Executors.newVirtualThreadPerTaskExecutor, looked up reflectively so this still compiles on java 17
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package mcts;
+
+import java.util.List;
+
+public class TimeManager {
+    // shares a total time budget for the game between the agent's moves
+    // each move gets the remaining time over the moves expected to be left, weighted by game phase
+    // (few stones: the opening matters less, a mostly full board is usually decided, the middlegame gets the most)
+    // forced moves are played without searching, & searches can stop early once their best move is decided
+
+    private static final int CELLS = 121;
+
+    private final double FILL_FRACTION = 0.5;  // fraction of the empty cells expected to be filled before the game ends
+
+    private final int MIN_MOVES_LEFT = 4;  // always keep time for at least this many more moves
+
+    private final int OPENING_STONES = 8;  // stones on the board before the middlegame starts
+
+    private final int ENDGAME_STONES = 60;  // stones on the board once the endgame starts
+
+    private final double OPENING_WEIGHT = 0.5;
+
+    private final double MIDDLEGAME_WEIGHT = 1.5;
+
+    private final double ENDGAME_WEIGHT = 1.0;
+
+    private final double MAX_FRACTION = 0.25;  // most of the remaining time a single move can have
+
+    private final int MIN_MOVE_TIME = 50;  // least time in ms a search gets
+
+    private final int SAFETY_MARGIN = 1000;  // time in ms held back for communication & gc
+
+    private long remaining;  // time in ms left for the rest of the game
+
+
+    public TimeManager(long gameTime) {
+        this.remaining = gameTime;
+    }
+
+
+    public int allocate(Board board) {
+        // time in ms to search the next move for
+        int empty = board.getEmptyCount();
+        int stones = CELLS - empty;
+
+        // our share of the moves expected before the game ends
+        double movesLeft = Math.max(MIN_MOVES_LEFT, empty * FILL_FRACTION / 2);
+
+        double weight;
+        if (stones < OPENING_STONES) weight = OPENING_WEIGHT;
+        else if (stones < ENDGAME_STONES) weight = MIDDLEGAME_WEIGHT;
+        else weight = ENDGAME_WEIGHT;
+
+        long available = remaining - SAFETY_MARGIN;
+        long time = (long) (available / movesLeft * weight);
+        time = Math.min(time, (long) (available * MAX_FRACTION));
+        return (int) Math.max(MIN_MOVE_TIME, time);
+    }
+
+    public void used(long time) {
+        // takes the time in ms a move actually took off the budget
+        remaining -= time;
+    }
+
+    public long getRemaining() {
+        return remaining;
+    }
+
+
+    public static Action forcedMove(Board board, Player p) {
+        // gets the move p has to make without searching, or null if there isn't one:
+        // the only possible action, a move which wins straight away, or the only cell which stops the opponent
+        // winning with their next move
+        if (board.getActionCount() == 1) return Action.of(p, board.getEmptyCell(0));
+
+        Player opponent = p == Player.RED ? Player.BLUE : Player.RED;
+        int block = -1;
+        int threats = 0;
+
+        // (copied first, as applying & undoing moves reorders the board's empty cells)
+        byte[] cells = new byte[CELLS];
+        int count = board.getEmptyCells(cells);
+        for (int n = 0; n < count; n++) {
+            int cell = cells[n];
+
+            board.applyAction(Action.of(p, cell));
+            boolean win = board.checkWin() == p;
+            board.undo();
+            if (win) return Action.of(p, cell);
+
+            board.applyAction(Action.of(opponent, cell));
+            boolean loss = board.checkWin() == opponent;
+            board.undo();
+            if (loss) {
+                block = cell;
+                threats++;
+            }
+        }
+
+        // (with more than one threat the game is lost anyway, so leave it to the search)
+        return threats == 1 ? Action.of(p, block) : null;
+    }
+
+    public static boolean isDecided(TreeNode root, long remainingPlayouts) {
+        // whether the search can't change its choice (the best win rate, as the agents exploit by win rate) in the
+        // play-outs it has left: even if they were all lost by the leader, its win rate would stay above any other
+        // child's win rate if they were all won by that child
+        TreeNode leader = null;
+        int leaderCount = 0, leaderPayoff = 0;
+        double bestWinRate = Double.NEGATIVE_INFINITY;
+        List<TreeNode> children = root.getChildren();
+        for (TreeNode child: children) {
+            long stats = child.getStats();
+            int count = TreeNode.countOf(stats);
+            double winRate = (double) TreeNode.payoffOf(stats) / count;
+            if (winRate > bestWinRate) {
+                bestWinRate = winRate;
+                leader = child;
+                leaderCount = count;
+                leaderPayoff = TreeNode.payoffOf(stats);
+            }
+        }
+        if (leader == null) return false;
+
+        double leaderWorst = (double) leaderPayoff / (leaderCount + remainingPlayouts);
+        for (TreeNode child: children) {
+            // (arena views are made on demand, so compare with equals)
+            if (child.equals(leader)) continue;
+            long stats = child.getStats();
+            double rivalBest = (double) (TreeNode.payoffOf(stats) + remainingPlayouts)
+                    / (TreeNode.countOf(stats) + remainingPlayouts);
+            if (rivalBest >= leaderWorst) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,99 @@
+package mcts;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class TranspositionTable {
+    // bounded table of node statistics keyed by position hash, shared between transposed positions
+    // (different move orders reaching the same position add to & read from the same entry)
+    // lock-free, so one table can be shared by every thread of a tree parallel search
+    // entries are grouped into 4-way buckets, & a full bucket replaces its least visited entry
+    // stats are packed the same way as TreeNode (count * 2^32 + payoff)
+
+    private static final int WAYS = 4;
+
+    private static final long EMPTY = 0;
+
+    private static final long RED_MOVED = 0x9E3779B97F4A7C15L;  // mixed in when red made the last move
+
+    private final AtomicLongArray keys;
+
+    private final AtomicLongArray stats;
+
+    private final int bucketMask;
+
+
+    public TranspositionTable() {
+        this(1 << 20);
+    }
+
+    public TranspositionTable(int entries) {
+        // no. of entries is rounded up to a power of 2 (16 bytes per entry)
+        int buckets = Integer.highestOneBit(Math.max(entries / WAYS - 1, 1)) << 1;
+        this.keys = new AtomicLongArray(buckets * WAYS);
+        this.stats = new AtomicLongArray(buckets * WAYS);
+        this.bucketMask = buckets - 1;
+    }
+
+
+    public static long key(long boardHash, Player lastPlayer) {
+        // key for a node, i.e. the position after its action & the player who made it
+        // (a node's payoff counts wins for the player who moved, so both are needed)
+        long key = lastPlayer == Player.RED ? boardHash ^ RED_MOVED : boardHash;
+        return key == EMPTY ? 1 : key;
+    }
+
+    public long get(long key) {
+        // returns the packed stats for the key, or 0 if it isn't in the table
+        int bucket = bucket(key);
+        for (int i = bucket; i < bucket + WAYS; i++)
+            if (keys.get(i) == key) return stats.get(i);
+
+        return 0;
+    }
+
+    public void add(long key, int countDelta, int payoffDelta) {
+        // adds to the stats for the key, inserting it (& replacing another entry if needed) when missing
+        long delta = TreeNode.pack(countDelta, payoffDelta);
+        int bucket = bucket(key);
+
+        while (true) {
+            int leastVisited = bucket;
+            int leastCount = Integer.MAX_VALUE;
+            for (int i = bucket; i < bucket + WAYS; i++) {
+                long current = keys.get(i);
+                if (current == key) {
+                    stats.getAndAdd(i, delta);
+                    return;
+                }
+                if (current == EMPTY) {
+                    if (keys.compareAndSet(i, EMPTY, key)) {
+                        stats.getAndAdd(i, delta);
+                        return;
+                    }
+                    // another thread claimed this slot, so check the bucket again
+                    leastCount = -1;
+                    break;
+                }
+
+                int count = TreeNode.countOf(stats.get(i));
+                if (count < leastCount) {
+                    leastCount = count;
+                    leastVisited = i;
+                }
+            }
+            if (leastCount < 0) continue;
+
+            // bucket is full, replace the least visited entry
+            // (a concurrent add to the old entry may land on the new one, which only skews the stats slightly)
+            long oldKey = keys.get(leastVisited);
+            if (keys.compareAndSet(leastVisited, oldKey, key)) {
+                stats.set(leastVisited, delta);
+                return;
+            }
+        }
+    }
+
+    private int bucket(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) * WAYS;
+    }
+}
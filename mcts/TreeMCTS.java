@@ -1,9 +1,12 @@
 package mcts;
 
+import mcts.events.SearchEvent;
 import mcts.policies.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Future;
 
 public class TreeMCTS {
     // implements tree parallelization for MCTS
@@ -11,9 +14,24 @@ public class TreeMCTS {
     private final int TIMEOUT;
     private final boolean LOG;
 
+    private final boolean TRANSPOSITIONS;  // whether threads share statistics between transposed positions
+
 
     private final ExploitPolicy exploit;
-    private List<TreeMCTSThread> threads;
+
+    private boolean stopWhenDecided;  // whether workers end the search once the move can't change
+
+    private NodeBudget budget;  // limit on the shared tree's size (null for no limit)
+
+    private SplittableRandom random = new SplittableRandom();  // split into a separate random source for each worker
+    private final SearchExecutor executor;  // long-lived worker pool the searches run on
+    private volatile List<TreeMCTSWorker> workers;  // (published once every worker is created, for stop)
+
+    private volatile boolean stopped;  // set to end the search early (stays set, instances are used for one search)
+
+    private TreeNode tree;  // shared tree from the last search
+
+    private int count;  // total simulations in the last search
 
 
     public TreeMCTS(int timeout) {
@@ -21,47 +39,87 @@ public class TreeMCTS {
     }
 
     public TreeMCTS(int timeout, boolean log) {
+        this(timeout, log, false);
+    }
+
+    public TreeMCTS(int timeout, boolean log, boolean transpositions) {
+        this(timeout, log, transpositions, SearchExecutor.getDefault());
+    }
+
+    public TreeMCTS(int timeout, boolean log, boolean transpositions, SearchExecutor executor) {
         this.TIMEOUT = timeout;
         this.exploit = new WinRateExploit();
         this.LOG = log;
+        this.TRANSPOSITIONS = transpositions;
+        this.executor = executor;
     }
 
 
     public Action search(Board board, Player p) {
-        // find max threads
-        int threadCount = Runtime.getRuntime().availableProcessors();
-        if (LOG) System.out.println(threadCount + " processors");
-        threads = new ArrayList<>();
+        return search(board, new TreeNode(p, true));
+    }
+
+    public Action search(Board board, TreeNode start) {
+        // searches from an existing root (e.g. a subtree kept from the previous turn)
+
+        SearchEvent event = new SearchEvent();
+        event.start();
 
-        // create tree root
-        TreeNode root = new TreeNode(p, true);
+        // one worker per pool thread
+        int threadCount = executor.getThreadCount();
+        if (LOG) System.out.println(threadCount + " threads");
+        List<TreeMCTSWorker> workers = new ArrayList<>();
+
+        // create tree root as a detached, shared copy of the starting tree (so the rest of the old tree can be freed)
+        TreeNode root = new TreeNode(null, start, true);
+        tree = root;
+
+        // one transposition table shared by every thread
+        TranspositionTable table = TRANSPOSITIONS ? new TranspositionTable() : null;
+
+        if (budget != null) {
+            budget.reset();
+            budget.add(TreeNode.countNodes(root));
+        }
 
-        // create threads with MCTS instances
+        // create workers with MCTS instances & run them on the pool
         for (int i = 0; i < threadCount; i++) {
-            threads.add(new TreeMCTSThread(board, TIMEOUT, root));
-            threads.get(i).start();
+            TreeMCTSWorker worker = new TreeMCTSWorker(board, TIMEOUT, root, table);
+            worker.mcts.setRandom(random.split());
+            worker.mcts.setBudget(budget);
+            worker.mcts.setStopWhenDecided(stopWhenDecided);
+            workers.add(worker);
         }
+        this.workers = workers;
+        if (stopped) stop();  // (in case the search was stopped while its workers were being created)
+        List<Future<?>> futures = executor.submitAll(workers);
 
-        // wait for threads to finish
-        for (TreeMCTSThread thread: threads) {
-            try {
-                thread.join();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
+        // wait for workers to finish
+        executor.awaitAll(futures);
+
+        // get individual thread stats
+        count = 0;
+        int maxDepth = 0;
+        long depthSum = 0;
+        for (int i = 0; i < threadCount; i++) {
+            TreeMCTSWorker worker = workers.get(i);
+            count += worker.mcts.getCount();
+            maxDepth = Math.max(maxDepth, worker.mcts.getMaxDepth());
+            depthSum += worker.mcts.getDepthSum();
+            if (LOG) System.out.println("Thread " + i + ": " + worker.mcts.getCount() + " simulations");
         }
 
+        if (LOG && budget != null)
+            System.out.println(budget.getNodes() + " nodes, " + budget.getRefused() + " expansions refused");
+
+        event.playouts = count;
+        if (budget != null) event.refusedExpansions = budget.getRefused();
+        event.finish(TRANSPOSITIONS ? "TreeMCTSTransposition" : "TreeMCTS", threadCount, root, maxDepth, depthSum);
+
         // run exploit policy on shared tree
-        TreeNode chosen = exploit.exploit(root);
+        TreeNode chosen = exploit.exploit(root, random);
+        if (chosen == null) return null;  // (stopped before anything was expanded)
         if (LOG) {
-            // get individual thread stats
-            int count = 0;
-            for (int i = 0; i < threadCount; i++) {
-                TreeMCTSThread thread = threads.get(i);
-                count += thread.mcts.getCount();
-                System.out.println("Thread " + i + ": " + thread.mcts.getCount() + " simulations");
-            }
-
             System.out.println("Chosen:  visited " + chosen.getCount() + " times, won " + chosen.getPayoff());
             System.out.println("Action: " + chosen.getAction().getPlayer() + "; " + chosen.getAction().toString());
             System.out.println(count + " simulations");
@@ -70,9 +128,46 @@ public class TreeMCTS {
         return chosen.getAction();
     }
 
+    public TreeNode getTree() {
+        // returns the shared tree from the last search
+        return tree;
+    }
+
+    public int getCount() {
+        // total simulations over every worker in the last search
+        return count;
+    }
+
+    public void setStopWhenDecided(boolean stopWhenDecided) {
+        // each worker stops once the move is decided on the shared tree
+        this.stopWhenDecided = stopWhenDecided;
+    }
+
+    public void setBudget(NodeBudget budget) {
+        // limits the no. of nodes in the shared tree
+        // (the workers are always in the tree, so it can't be pruned & the search stops expanding instead)
+        this.budget = budget;
+    }
+
+    public void setSeed(long seed) {
+        // makes the workers' random sources reproducible (the same seed gives each worker the same stream,
+        // although the searches still depend on thread timing)
+        this.random = new SplittableRandom(seed);
+    }
+
+    public void stop() {
+        // ends the current search early (workers finish their current iteration)
+        // can be called from any thread, even before the search has started its workers
+        stopped = true;
+        List<TreeMCTSWorker> workers = this.workers;
+        if (workers != null)
+            for (TreeMCTSWorker worker: workers)
+                worker.mcts.stop();
+    }
+
 
 
-    private static class TreeMCTSThread extends Thread {
+    private static class TreeMCTSWorker implements Runnable {
 
         private final int V_LOSS = 1;  // how many losses to add as virtual loss
 
@@ -83,18 +178,19 @@ public class TreeMCTS {
         private final TreeNode sharedRoot;
 
 
-        public TreeMCTSThread(Board b, int timeout, TreeNode root) {
-            this(b, timeout, false, root);
+        public TreeMCTSWorker(Board b, int timeout, TreeNode root, TranspositionTable table) {
+            this(b, timeout, false, root, table);
         }
 
-        public TreeMCTSThread(Board b, int timeout, boolean log, TreeNode root) {
+        public TreeMCTSWorker(Board b, int timeout, boolean log, TreeNode root, TranspositionTable table) {
             this.mcts = new MCTS(timeout, log, false, V_LOSS);
             this.mcts.initPolicies(
-                    new UCTSelectShared(),
-                    new RandomExpandShared(),
-                    new RandomPlayout(),
+                    table == null ? new UCTSelect() : new UCTSelectTransposition(table),
+                    new RandomExpand(),
+                    new RandomFillPlayout(),
                     new WinRateExploit()
             );
+            this.mcts.setTranspositionTable(table);
 
             this.board = b;
             this.sharedRoot = root;
@@ -106,7 +202,7 @@ public class TreeMCTS {
             // run search
             mcts.search(board, sharedRoot);
 
-            // thread terminates
+            // worker returns to the pool
         }
     }
 }
@@ -2,15 +2,19 @@ package mcts;
 
 public class TreeMCTSAgent extends MCTSAgent {
 
-    protected final int timeout = 5000;
-
     @Override
-    protected Action runSearch(Board b, Player p) {
-        // instantiate TreeMCTS class
-        TreeMCTS mcts = new TreeMCTS(timeout, true);
+    protected Action runSearch(Board b, TreeNode root) {
+        // instantiate TreeMCTS class (with a shared transposition table)
+        TreeMCTS mcts = new TreeMCTS(moveTime, LOG, true, getExecutor());
+        mcts.setStopWhenDecided(true);  // (ends early once the move can't change)
+        if (budget != null) mcts.setBudget(budget);  // (shared trees stop growing at the budget, as they can't be pruned)
+        stopSearch = mcts::stop;
+
+        // run the search from the given root & keep the searched tree
+        Action a = mcts.search(b, root);
+        tree = mcts.getTree();
 
-        // return result of the search
-        return mcts.search(b, p);
+        return a;
     }
 
     public static void main(String[] args) {
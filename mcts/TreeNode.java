@@ -1,37 +1,51 @@
 package mcts;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 public class TreeNode {
     // single node in the MCTS partial tree
-    // count & payoff currently use shorts to try save on memory use
-    // (-32767 < short < 32767)
+    // count & payoff are packed into a single long (count * 2^32 + payoff) & updated atomically,
+    // so shared trees need no locks & readers always see a matching count & payoff
 
     // board state is onl needed for selection, so selection uses local board state
 
     private final Action action;  // corresponding action for the node
 
-    private int count;  // no. of times node visited
+    private volatile long stats;  // no. of times node visited & cumulative payoff for play-outs through this node
 
-    private int payoff;  // cumulative payoff for play-outs passing through this node
+    private volatile byte[] untried;  // moves without a child yet, in random order (built on the node's first expansion)
+
+    private volatile int tried;  // no. of moves taken from the front of untried
 
     private final TreeNode parent;  // parent node (needed for backpropagation)
 
     private final List<TreeNode> children;  // child nodes (arraylist? p.queue?)
 
-    private final Lock lock =  new ReentrantLock();
-
     private final boolean shared;
 
+    private static final VarHandle STATS, UNTRIED, TRIED;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STATS = lookup.findVarHandle(TreeNode.class, "stats", long.class);
+            UNTRIED = lookup.findVarHandle(TreeNode.class, "untried", byte[].class);
+            TRIED = lookup.findVarHandle(TreeNode.class, "tried", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
 
     public TreeNode(TreeNode parent, Action action) {
         this.action = action;
-        this.count = 0;
-        this.payoff = 0;
+        this.stats = 0;
 
         this.parent = parent;
         if (parent.shared) this.children = new CopyOnWriteArrayList<>();
@@ -42,7 +56,7 @@ public class TreeNode {
 
     public TreeNode(Player player, boolean shared) {
         // constructor for root node
-        this.action = new Action(player, false);
+        this.action = Action.of(player, 0, 0);  // placeholder, only the player is used
 
         this.parent = null;
         if (shared) this.children = new CopyOnWriteArrayList<>();
@@ -56,45 +70,80 @@ public class TreeNode {
     }
 
     public TreeNode(TreeNode parent, TreeNode oldNode) {
+        this(parent, oldNode, oldNode.shared);
+    }
+
+    public TreeNode(TreeNode parent, TreeNode oldNode, boolean shared) {
         // deep copy constructor
-        // copies oldNode as a child of parent
+        // copies oldNode as a child of parent (or as a detached root if parent is null)
 
-        this.action = oldNode.action;
-        this.count = oldNode.count;
-        this.payoff = oldNode.payoff;
+        // (reads through the getters so nodes from other tree stores can be copied too)
+        this.action = oldNode.getAction();
+        this.stats = oldNode.getStats();
 
         this.parent = parent;
-        if (oldNode.shared) this.children = new CopyOnWriteArrayList<>();
+        if (shared) this.children = new CopyOnWriteArrayList<>();
         else this.children = new ArrayList<>();
 
-        this.shared = oldNode.shared;
+        this.shared = shared;
 
         // deep copy every child of the old node
-        for (TreeNode child: oldNode.children)
+        for (TreeNode child: oldNode.getChildren())
             this.children.add(
-                    new TreeNode(this, child)
+                    new TreeNode(this, child, shared)
             );
     }
 
+    protected TreeNode() {
+        // constructor for views onto other tree stores (e.g. NodeArena)
+        // subclasses override every accessor, so none of the fields are used
+        this.action = null;
+        this.parent = null;
+        this.children = null;
+        this.shared = false;
+    }
+
 
     public Action getAction() {
         return action;
     }
 
     public int getCount() {
-        return count;
+        return countOf(getStats());
     }
 
-    public synchronized void addCount(int delta) {
-        count = count + delta;
+    public void addCount(int delta) {
+        addStats(delta, 0);
     }
 
     public int getPayoff() {
-        return payoff;
+        return payoffOf(getStats());
     }
 
-    public synchronized void addPayoff(int delta) {
-        payoff = payoff + delta;
+    public void addPayoff(int delta) {
+        addStats(0, delta);
+    }
+
+    public long getStats() {
+        // snapshot of count & payoff (unpack with countOf & payoffOf)
+        return stats;
+    }
+
+    public void addStats(int countDelta, int payoffDelta) {
+        // updates count & payoff together in one atomic add (also used for adding / removing virtual loss)
+        STATS.getAndAdd(this, ((long) countDelta << 32) + payoffDelta);
+    }
+
+    public static long pack(int count, int payoff) {
+        return ((long) count << 32) + payoff;
+    }
+
+    public static int countOf(long stats) {
+        return (int) ((stats - payoffOf(stats)) >> 32);
+    }
+
+    public static int payoffOf(long stats) {
+        return (int) stats;
     }
 
 
@@ -106,11 +155,116 @@ public class TreeNode {
         return children;
     }
 
-    public synchronized void addChild(TreeNode child) {
+    public int getChildStats(long[] stats, short[] actions) {
+        // copies each child's statistics & action (its Action.getIndex()) into the arrays, in getChildren() order,
+        // & returns the no. of children, so policies can score the children without a node for each one
+        // (shared trees only ever add children at the end, so the indexes stay valid for getChild)
+        int n = 0;
+        for (TreeNode child: getChildren()) {
+            stats[n] = child.getStats();
+            actions[n] = (short) child.getAction().getIndex();
+            n++;
+        }
+        return n;
+    }
+
+    public TreeNode getChild(int i) {
+        // gets the child at the given index of getChildren()
+        return getChildren().get(i);
+    }
+
+    public void addChild(TreeNode child) {
+        // shared trees use a CopyOnWriteArrayList, so no lock is needed here
         children.add(child);
     }
 
-    public Lock getLock() {
-        return this.lock;
+    public TreeNode expandChild(Action action) {
+        // creates a child node for the given action & adds it to this node
+        TreeNode child = new TreeNode(this, action);
+        addChild(child);
+        return child;
+    }
+
+    public byte[] getUntried() {
+        // moves (cell index, 121 = swap) which had no child when the node was first expanded, or null before then
+        return untried;
+    }
+
+    public int getTried() {
+        // no. of moves already taken from getUntried()
+        return tried;
+    }
+
+    public boolean setUntried(byte[] moves) {
+        // installs the node's untried moves, returns false if another thread got there first
+        return UNTRIED.compareAndSet(this, null, moves);
+    }
+
+    public int takeUntried() {
+        // atomically takes the next untried move, so each one is expanded by exactly one thread
+        // returns -1 once every move has been taken (or if the untried moves haven't been set)
+        byte[] moves = untried;
+        if (moves == null) return -1;
+        int n = (int) TRIED.getAndAdd(this, 1);
+        return n < moves.length ? moves[n] : -1;
+    }
+
+    public boolean isShared() {
+        // whether the node is part of a tree shared between threads
+        return shared;
+    }
+
+    public long prune(int minVisits, long boundaryNodes, int keepPlies) {
+        // removes every subtree more than keepPlies below this node whose root has fewer than minVisits visits,
+        // & up to boundaryNodes more whose root has exactly minVisits, then returns the no. of nodes removed
+        // nodes which lose children rebuild their untried actions on their next expansion, so the moves can be
+        // expanded again (only safe while no other thread is in the tree)
+        return prune(minVisits, keepPlies, new long[] {boundaryNodes});
+    }
+
+    private long prune(int minVisits, int keepPlies, long[] boundaryLeft) {
+        long removed = 0;
+        List<TreeNode> kept = new ArrayList<>(children.size());
+        for (TreeNode child: children) {
+            int count = child.getCount();
+            boolean remove = keepPlies <= 0 && (count < minVisits || (count == minVisits && boundaryLeft[0] > 0));
+            if (remove) {
+                if (count == minVisits) boundaryLeft[0]--;
+                removed += countNodes(child);
+            }
+            else {
+                removed += child.prune(minVisits, keepPlies - 1, boundaryLeft);
+                kept.add(child);
+            }
+        }
+
+        if (kept.size() < children.size()) {
+            children.clear();
+            children.addAll(kept);
+            untried = null;
+            tried = 0;
+        }
+        return removed;
+    }
+
+    public static long countNodes(TreeNode root) {
+        // counts the nodes below & including root
+        long nodes = 0;
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            nodes++;
+            for (TreeNode child: node.getChildren()) stack.push(child);
+        }
+        return nodes;
+    }
+
+    public boolean hasUntried(Board board) {
+        // whether any action is still to be expanded (board is at the node's position)
+        // O(1) either way: before the first expansion every action without a child is untried
+        byte[] moves = getUntried();
+        if (moves == null) return board.getActionCount() > getChildren().size();
+        return getTried() < moves.length;
     }
 }
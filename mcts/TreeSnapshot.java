@@ -0,0 +1,208 @@
+package mcts;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TreeSnapshot {
+    // compact binary format for saving search trees, & loading them to warm start a search
+    // nodes are streamed depth first, so neither side holds more than the current path besides the tree itself
+    // each node is its move, visit count, losses (count - payoff, which is smaller than the payoff in won lines)
+    // & no. of children, all as varints, so most nodes take 4-6 bytes
+    // only the statistics are kept, untried moves are rebuilt when a loaded node is next expanded
+    //
+    // file layout:
+    //   header: magic (8 bytes), version (varint), pieces hash of the root's position (8 bytes), root player (byte)
+    //   nodes:  move (byte, x * 11 + y or 121 for swap; not written for the root), count (varint),
+    //           losses (zigzag varint), children (varint), then each child's node
+
+    private static final long MAGIC = 0x4845585452454531L;  // "HEXTREE1"
+
+    private static final int VERSION = 1;
+
+    private static final Player[] PLAYERS = Player.values();
+
+    // writes are queued on one background thread, so a search never waits for the disk (& files are written in order)
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(task -> {
+        Thread writer = new Thread(task, "tree-snapshot");
+        writer.setDaemon(true);  // (callers which need the file join the returned future)
+        return writer;
+    });
+
+
+    public static void write(TreeNode root, Board board, String file) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            write(root, board, out);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void write(TreeNode root, Board board, OutputStream out) throws IOException {
+        // board is the root's position, so the snapshot can only be loaded for the same position
+        writeLong(out, MAGIC);
+        writeVarint(out, VERSION);
+        writeLong(out, board.getPiecesHash());
+        out.write(root.getAction().getPlayer().ordinal());
+
+        writeNode(root, out);
+        out.flush();
+    }
+
+    public static CompletableFuture<Void> writeAsync(TreeNode root, Board board, String file) {
+        // writes the snapshot on the background writer, returning straight away
+        // the tree mustn't change until the future completes, so pass a finished search's tree (the searches & agents
+        // work on copies of their starting tree, so the tree can still be used to start the next search)
+        Board position = new Board(board);
+        return CompletableFuture.runAsync(() -> write(root, position, file), WRITER);
+    }
+
+    private static void writeNode(TreeNode node, OutputStream out) throws IOException {
+        long stats = node.getStats();
+        int count = TreeNode.countOf(stats);
+        writeVarint(out, count);
+        writeVarint(out, zigzag(count - TreeNode.payoffOf(stats)));
+
+        List<TreeNode> children = node.getChildren();
+        writeVarint(out, children.size());
+        for (TreeNode child: children) {
+            out.write(child.getAction().getMoveIndex());
+            writeNode(child, out);
+        }
+    }
+
+
+    public static TreeNode read(String file, Board board) {
+        // loads the snapshot as a new (unshared) tree, or returns null if it was saved for another position
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return read(in, board);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static TreeNode read(InputStream in, Board board) throws IOException {
+        // (the position is checked before the nodes are read, so another position's snapshot isn't loaded)
+        readHeader(in);
+        if (readLong(in) != board.getPiecesHash()) return null;
+        return readTree(in);
+    }
+
+    public static Saved load(String file) throws IOException {
+        // loads the snapshot whatever its position, for callers which keep it until its position comes up
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            readHeader(in);
+            long piecesHash = readLong(in);
+            return new Saved(piecesHash, readTree(in));
+        }
+    }
+
+    private static void readHeader(InputStream in) throws IOException {
+        if (readLong(in) != MAGIC || readVarint(in) != VERSION)
+            throw new IOException("not a tree snapshot (or an old version)");
+    }
+
+    private static TreeNode readTree(InputStream in) throws IOException {
+        // reads the root's player & the nodes
+        int player = readByte(in);
+        if (player > Player.BLUE.ordinal()) throw new IOException("corrupt tree snapshot");
+
+        TreeNode root = new TreeNode(PLAYERS[player]);
+        readNode(root, in);
+        return root;
+    }
+
+    private static void readNode(TreeNode node, InputStream in) throws IOException {
+        int count = readVarint(in);
+        int payoff = count - unzigzag(readVarint(in));
+        node.addStats(count, payoff);
+
+        // every child is a move by the other player (including a swap)
+        Player p = node.getAction().getPlayer() == Player.RED ? Player.BLUE : Player.RED;
+        int children = readVarint(in);
+        for (int i = 0; i < children; i++) {
+            int move = readByte(in);
+            if (move > Action.SWAP) throw new IOException("corrupt tree snapshot");
+            TreeNode child = node.expandChild(move == Action.SWAP ? Action.swap(p) : Action.of(p, move));
+            readNode(child, in);
+        }
+    }
+
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        // 7 bits per byte, low bits first, high bit set on every byte but the last
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte(in);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private static int zigzag(int value) {
+        // maps small negative values to small positive ones (losses aren't negative in a finished tree, but any
+        // statistics still round trip exactly)
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        for (int shift = 56; shift >= 0; shift -= 8) out.write((int) (value >>> shift));
+    }
+
+    private static long readLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int i = 0; i < 8; i++) value = (value << 8) | readByte(in);
+        return value;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException("truncated tree snapshot");
+        return b;
+    }
+
+
+
+    public static class Saved {
+        // a loaded snapshot, with the pieces hash of the position it was saved for
+
+        private final long piecesHash;
+        private final TreeNode root;
+
+
+        private Saved(long piecesHash, TreeNode root) {
+            this.piecesHash = piecesHash;
+            this.root = root;
+        }
+
+        public long getPiecesHash() {
+            return piecesHash;
+        }
+
+        public TreeNode getRoot() {
+            return root;
+        }
+    }
+}
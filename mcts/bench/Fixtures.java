@@ -0,0 +1,95 @@
+package mcts.bench;
+
+import mcts.Action;
+import mcts.Board;
+import mcts.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public class Fixtures {
+    // fixed positions for the benchmarks (opening, middlegame & near-full boards)
+    // built from seeded random play which never makes a winning move, so the game is still open in each
+    // (the same seed gives the same positions in every run)
+
+    private static final long SEED = 0x4E58L;
+
+
+    public static final Position OPENING = build("opening", 2);
+
+    public static final Position MIDDLEGAME = build("middlegame", 40);
+
+    public static final Position NEAR_FULL = build("near-full", 100);
+
+    public static final List<Position> ALL = List.of(OPENING, MIDDLEGAME, NEAR_FULL);
+
+
+    public static Position get(String name) {
+        // gets the fixture with the given name (for benchmarks parameterised by position)
+        for (Position position: ALL)
+            if (position.name.equals(name)) return position;
+        throw new RuntimeException("no fixture named " + name);
+    }
+
+
+    private static Position build(String name, int pieces) {
+        // plays random non-winning moves until there are the given no. of pieces (or none are left)
+        SplittableRandom rand = new SplittableRandom(SEED + pieces);
+        Board board = new Board();
+        Player lastPlayer = Player.BLUE;  // red moves first
+
+        for (int n = 0; n < pieces; n++) {
+            Player next = lastPlayer == Player.RED ? Player.BLUE : Player.RED;
+
+            // try the empty cells in a random order until one doesn't end the game
+            List<Action> actions = new ArrayList<>();
+            for (Action a: board.getActions(next))
+                if (!a.isSwap()) actions.add(a);  // keep the colours as they are
+            Board played = null;
+            while (!actions.isEmpty()) {
+                Action a = actions.remove(rand.nextInt(actions.size()));
+                Board candidate = new Board(board);
+                candidate.applyAction(a);
+                if (candidate.checkWin() == Player.NONE) {
+                    played = candidate;
+                    break;
+                }
+            }
+            if (played == null) break;
+
+            board = played;
+            lastPlayer = next;
+        }
+
+        return new Position(name, board, lastPlayer);
+    }
+
+
+
+    public static class Position {
+        // a named board & the player who made the last move on it
+
+        public final String name;
+
+        public final Board board;
+
+        public final Player lastPlayer;
+
+
+        private Position(String name, Board board, Player lastPlayer) {
+            this.name = name;
+            this.board = board;
+            this.lastPlayer = lastPlayer;
+        }
+
+
+        public Player nextPlayer() {
+            return lastPlayer == Player.RED ? Player.BLUE : Player.RED;
+        }
+
+        public int emptyCells() {
+            return board.getEmptyCells(new byte[121]);
+        }
+    }
+}
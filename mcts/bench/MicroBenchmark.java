@@ -0,0 +1,313 @@
+package mcts.bench;
+
+import mcts.Action;
+import mcts.Board;
+import mcts.MCTS;
+import mcts.RootMCTS;
+import mcts.TreeNode;
+import mcts.policies.RandomFillPlayout;
+import mcts.policies.RandomPlayout;
+import mcts.policies.UCTSelect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public class MicroBenchmark {
+    // microbenchmarks for the search hot paths, on each of the fixture positions
+    // plain java fallback for the JMH benchmarks in benchmarks/ (which fork JVMs & guard against dead code properly),
+    // for when they can't be built (no maven or no access to its repository); use those for real measurements
+    // each benchmark runs in batches: the batch's setup isn't timed, then every op in it is
+    // batches are repeated for a warmup period (so the jit has compiled everything) before being measured
+    // reports the mean & standard deviation of the time per op over the measured batches
+    //
+    // run with: java -cp agents mcts.bench.MicroBenchmark [name filter]
+    // (-Dbench.warmup=<ms> & -Dbench.measure=<ms> change how long each benchmark runs,
+    // & -Dbench.seed=<n> changes the seed for the random sources)
+
+    private final int WARMUP = Integer.getInteger("bench.warmup", 2000);  // time in ms to warm up each benchmark
+
+    private final int MEASURE = Integer.getInteger("bench.measure", 3000);  // time in ms to measure each benchmark
+
+    private static final long SEED = Long.getLong("bench.seed", 1);
+
+    private final String filter;
+
+    private long sink;  // results of every op are added here, so the jit can't drop the work
+
+
+    public MicroBenchmark(String filter) {
+        this.filter = filter;
+    }
+
+
+    public static void main(String[] args) {
+        MicroBenchmark bench = new MicroBenchmark(args.length > 0 ? args[0] : "");
+        bench.runAll();
+    }
+
+    public void runAll() {
+        System.out.printf("%-24s %-12s %14s %12s %10s%n", "benchmark", "position", "ns/op", "+/-", "ops");
+
+        for (Fixtures.Position position: Fixtures.ALL) {
+            run(new ApplyAction(position));
+            run(new GetActions(position));
+            run(new CheckWin(position));
+            run(new Copy(position));
+            run(new Playout(position));
+            run(new FillPlayout(position));
+            run(new Select(position));
+            run(new Iteration(position));
+            run(new JoinTrees(position));
+        }
+
+        if (sink == 42) System.out.println();  // keeps sink live
+    }
+
+
+    private void run(Benchmark benchmark) {
+        if (!benchmark.name.contains(filter) && !benchmark.position.name.contains(filter)) return;
+
+        // warm up
+        long end = System.nanoTime() + WARMUP * 1_000_000L;
+        while (System.nanoTime() < end) batch(benchmark);
+
+        // measure
+        List<Double> times = new ArrayList<>();
+        end = System.nanoTime() + MEASURE * 1_000_000L;
+        while (System.nanoTime() < end) times.add(batch(benchmark));
+
+        double mean = 0;
+        for (double t: times) mean += t;
+        mean /= times.size();
+        double variance = 0;
+        for (double t: times) variance += (t - mean) * (t - mean);
+        double deviation = Math.sqrt(variance / Math.max(times.size() - 1, 1));
+
+        System.out.printf("%-24s %-12s %14.1f %12.1f %10d%n",
+                benchmark.name, benchmark.position.name, mean, deviation, (long) times.size() * benchmark.batchSize);
+    }
+
+    private double batch(Benchmark benchmark) {
+        // runs one batch & returns the mean time per op in ns
+        benchmark.setup();
+
+        long start = System.nanoTime();
+        long result = 0;
+        for (int i = 0; i < benchmark.batchSize; i++)
+            result += benchmark.op(i);
+        long time = System.nanoTime() - start;
+
+        sink += result;
+        return (double) time / benchmark.batchSize;
+    }
+
+
+
+    private static abstract class Benchmark {
+        // a single benchmark on one position
+
+        protected final String name;
+
+        protected final Fixtures.Position position;
+
+        protected final int batchSize;  // ops per timed batch
+
+        protected final SplittableRandom rand = new SplittableRandom(SEED);  // seeded, so every run is the same
+
+
+        protected Benchmark(String name, Fixtures.Position position, int batchSize) {
+            this.name = name;
+            this.position = position;
+            this.batchSize = batchSize;
+        }
+
+
+        protected void setup() {
+            // prepares state for the next batch (not timed)
+        }
+
+        protected abstract long op(int i);
+        // runs one op & returns something derived from the result
+    }
+
+
+    private static class ApplyAction extends Benchmark {
+        // Board.applyAction on a fresh copy of the position (copies are made in setup)
+
+        private final Board[] boards;
+
+        private final List<Action> actions;
+
+        private ApplyAction(Fixtures.Position position) {
+            super("applyAction", position, 1000);
+            boards = new Board[batchSize];
+            actions = position.board.getActions(position.nextPlayer());
+        }
+
+        @Override
+        protected void setup() {
+            for (int i = 0; i < batchSize; i++) boards[i] = new Board(position.board);
+        }
+
+        @Override
+        protected long op(int i) {
+            boards[i].applyAction(actions.get(i % actions.size()));
+            return boards[i].getHash();
+        }
+    }
+
+    private static class GetActions extends Benchmark {
+        // Board.getActions for the player to move
+
+        private GetActions(Fixtures.Position position) {
+            super("getActions", position, 1000);
+        }
+
+        @Override
+        protected long op(int i) {
+            return position.board.getActions(position.nextPlayer()).size();
+        }
+    }
+
+    private static class CheckWin extends Benchmark {
+        // Board.checkWin on the position
+
+        private CheckWin(Fixtures.Position position) {
+            super("checkWin", position, 10000);
+        }
+
+        @Override
+        protected long op(int i) {
+            return position.board.checkWin().ordinal();
+        }
+    }
+
+    private static class Copy extends Benchmark {
+        // Board(Board) copy constructor
+
+        private Copy(Fixtures.Position position) {
+            super("copy", position, 1000);
+        }
+
+        @Override
+        protected long op(int i) {
+            return new Board(position.board).getHash();
+        }
+    }
+
+    private static class Playout extends Benchmark {
+        // one RandomPlayout game to the end from the position
+
+        private final RandomPlayout playout = new RandomPlayout();
+
+        private Playout(Fixtures.Position position) {
+            super("randomPlayout", position, 50);
+        }
+
+        @Override
+        protected long op(int i) {
+            return playout.playout(new Board(position.board), position.lastPlayer, rand).ordinal();
+        }
+    }
+
+    private static class FillPlayout extends Benchmark {
+        // one RandomFillPlayout game to the end from the position (the playout the searches use)
+
+        private final RandomFillPlayout playout = new RandomFillPlayout();
+
+        private FillPlayout(Fixtures.Position position) {
+            super("randomFillPlayout", position, 1000);
+        }
+
+        @Override
+        protected long op(int i) {
+            return playout.playout(new Board(position.board), position.lastPlayer, rand).ordinal();
+        }
+    }
+
+    private static class Select extends Benchmark {
+        // one UCTSelect descent through a tree grown by 20000 iterations (the board is moved back after each)
+
+        private static final int ITERATIONS = 20000;
+
+        private final UCTSelect select = new UCTSelect();
+
+        private final Board board;
+
+        private final TreeNode root;
+
+        private Select(Fixtures.Position position) {
+            super("uctSelect", position, 1000);
+
+            root = new TreeNode(position.lastPlayer);
+            MCTS mcts = new MCTS(0, false, false);
+            mcts.setRandom(rand);
+            for (int i = 0; i < ITERATIONS; i++) mcts.iterate(position.board, root);
+
+            board = new Board(position.board);
+        }
+
+        @Override
+        protected long op(int i) {
+            int moves = board.getMoveCount();
+            TreeNode selected = select.select(root, board, rand);
+            board.undoTo(moves);
+            return selected == null ? 0 : selected.getCount();
+        }
+    }
+
+    private static class Iteration extends Benchmark {
+        // one full select, expand, playout & back-propagate iteration with the default policies
+        // (each batch starts from an empty tree, so later iterations in a batch select deeper)
+
+        private final MCTS mcts = new MCTS(0, false, false);
+
+        private TreeNode root;
+
+        private Iteration(Fixtures.Position position) {
+            super("iteration", position, 1000);
+            mcts.setRandom(rand);
+        }
+
+        @Override
+        protected void setup() {
+            root = new TreeNode(position.lastPlayer);
+        }
+
+        @Override
+        protected long op(int i) {
+            return mcts.iterate(position.board, root) ? 1 : 0;
+        }
+    }
+
+    private static class JoinTrees extends Benchmark {
+        // RootMCTS.joinTrees for 4 worker trees of 2000 iterations each, started from the same base
+
+        private static final int TREES = 4;
+
+        private static final int ITERATIONS = 2000;
+
+        private final TreeNode base;
+
+        private final List<TreeNode> trees = new ArrayList<>();
+
+        private JoinTrees(Fixtures.Position position) {
+            super("joinTrees", position, 10);
+
+            base = new TreeNode(position.lastPlayer);
+            MCTS mcts = new MCTS(0, false, false);
+            mcts.setRandom(rand);
+            for (int t = 0; t < TREES; t++) {
+                TreeNode tree = new TreeNode(null, base);
+                for (int i = 0; i < ITERATIONS; i++) mcts.iterate(position.board, tree);
+                trees.add(tree);
+            }
+        }
+
+        @Override
+        protected long op(int i) {
+            return RootMCTS.joinTrees(base, trees, 0).getCount();
+        }
+    }
+}
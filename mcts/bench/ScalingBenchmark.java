@@ -0,0 +1,240 @@
+package mcts.bench;
+
+import mcts.Board;
+import mcts.Contention;
+import mcts.MCTS;
+import mcts.Player;
+import mcts.RootMCTS;
+import mcts.SearchExecutor;
+import mcts.TreeMCTS;
+import mcts.TreeNode;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public class ScalingBenchmark {
+    // thread scaling benchmark for each parallel search, run in-process on the fixture positions
+    // every search is run for a fixed time at 1, 2, 4, ... up to the available cpus (& at exactly that no.)
+    // reports playouts per second, scaling efficiency (against the same search on 1 thread), contention
+    // on shared trees, time spent joining & syncing, & peak heap use, as csv or json
+    //
+    // run with: java -cp agents mcts.bench.ScalingBenchmark [time per search in ms]
+    // (-Dbench.format=json for json, -Dbench.out=<file> to write to a file, -Dbench.threads=<n> for the max threads,
+    // -Dbench.seed=<n> to seed the searches' random sources)
+
+    private final int TIMEOUT;  // time in ms for each search
+
+    private final int MAX_THREADS = Integer.getInteger("bench.threads", SearchExecutor.defaultThreadCount());
+
+    private final boolean JSON = "json".equals(System.getProperty("bench.format"));
+
+    private final Long SEED = Long.getLong("bench.seed");  // null for unseeded searches
+
+
+    public ScalingBenchmark(int timeout) {
+        this.TIMEOUT = timeout;
+    }
+
+
+    public static void main(String[] args) {
+        ScalingBenchmark bench = new ScalingBenchmark(args.length > 0 ? Integer.parseInt(args[0]) : 2000);
+        List<Result> results = bench.runAll();
+
+        String out = System.getProperty("bench.out");
+        if (out == null) {
+            bench.write(results, new PrintWriter(System.out, true));
+            return;
+        }
+        try (PrintWriter writer = new PrintWriter(new FileWriter(out))) {
+            bench.write(results, writer);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public List<Result> runAll() {
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int n = 1; n < MAX_THREADS; n *= 2) threadCounts.add(n);
+        threadCounts.add(MAX_THREADS);
+
+        // warm up each search once (so the first measured runs aren't interpreted)
+        for (Strategy strategy: Strategy.values())
+            run(strategy, Fixtures.MIDDLEGAME, strategy == Strategy.SEQUENTIAL ? 1 : MAX_THREADS);
+
+        List<Result> results = new ArrayList<>();
+        for (Fixtures.Position position: Fixtures.ALL)
+            for (Strategy strategy: Strategy.values()) {
+                Result single = null;
+                for (int threads: threadCounts) {
+                    if (strategy == Strategy.SEQUENTIAL && threads > 1) break;  // sequential baseline
+
+                    Result result = run(strategy, position, threads);
+                    if (single == null) single = result;
+                    result.efficiency = result.playoutsPerSecond() / (threads * single.playoutsPerSecond());
+                    results.add(result);
+                }
+            }
+
+        return results;
+    }
+
+
+    private Result run(Strategy strategy, Fixtures.Position position, int threads) {
+        // runs one search on its own pool, measuring from a clean heap
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP) heapPools.add(pool);
+
+        System.gc();
+        for (MemoryPoolMXBean pool: heapPools) pool.resetPeakUsage();
+        Contention.reset();
+
+        Result result = new Result(strategy, position.name, threads);
+        try (SearchExecutor executor = new SearchExecutor(threads)) {
+            long start = System.nanoTime();
+            strategy.search(this, result, executor, new Board(position.board), position.lastPlayer);
+            result.time = System.nanoTime() - start;
+        }
+
+        result.claimRetries = Contention.CLAIM_RETRIES.sum();
+        result.claimConflicts = Contention.CLAIM_CONFLICTS.sum();
+        result.wastedIterations = Contention.WASTED_ITERATIONS.sum();
+
+        // (sum of each pool's peak, so an upper bound on the actual peak)
+        for (MemoryPoolMXBean pool: heapPools) result.peakHeap += pool.getPeakUsage().getUsed();
+
+        return result;
+    }
+
+
+    private void write(List<Result> results, PrintWriter out) {
+        String[] columns = {
+                "strategy", "position", "threads", "playouts", "seconds", "playoutsPerSecond", "efficiency",
+                "claimRetries", "claimConflicts", "wastedIterations", "joinMs", "syncMs", "peakHeapMB"
+        };
+
+        if (!JSON) out.println(String.join(",", columns));
+        else out.println("[");
+
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            Object[] values = {
+                    r.strategy.name(), r.position, r.threads, r.playouts, r.time / 1e9, r.playoutsPerSecond(),
+                    r.efficiency, r.claimRetries, r.claimConflicts, r.wastedIterations, r.joinTime / 1e6,
+                    r.syncTime / 1e6, r.peakHeap / (1024.0 * 1024.0)
+            };
+
+            StringBuilder line = new StringBuilder(JSON ? "  {" : "");
+            for (int c = 0; c < columns.length; c++) {
+                if (c > 0) line.append(JSON ? ", " : ",");
+                String value = values[c] instanceof Double ? String.format("%.3f", (Double) values[c]) : values[c].toString();
+                if (JSON) {
+                    if (values[c] instanceof String) value = "\"" + value + "\"";
+                    line.append("\"").append(columns[c]).append("\": ");
+                }
+                line.append(value);
+            }
+            if (JSON) line.append(i < results.size() - 1 ? "}," : "}");
+            out.println(line);
+        }
+
+        if (JSON) out.println("]");
+        out.flush();
+    }
+
+
+
+    private enum Strategy {
+        // each parallel search, as used by the agents
+
+        SEQUENTIAL {
+            @Override
+            void search(ScalingBenchmark bench, Result result, SearchExecutor executor, Board board, Player p) {
+                MCTS search = new MCTS(bench.TIMEOUT, false);
+                if (bench.SEED != null) search.setRandom(new SplittableRandom(bench.SEED));
+                search.search(board, new TreeNode(p));
+                result.playouts = search.getCount();
+            }
+        },
+        ROOT {
+            @Override
+            void search(ScalingBenchmark bench, Result result, SearchExecutor executor, Board board, Player p) {
+                RootMCTS search = new RootMCTS(false, bench.TIMEOUT, false, executor);
+                if (bench.SEED != null) search.setSeed(bench.SEED);
+                search.search(board, p);
+                result.playouts = search.getCount();
+                result.joinTime = search.getJoinTime();
+            }
+        },
+        ROOT_SYNC {
+            @Override
+            void search(ScalingBenchmark bench, Result result, SearchExecutor executor, Board board, Player p) {
+                RootMCTS search = new RootMCTS(true, bench.TIMEOUT, false, executor);
+                if (bench.SEED != null) search.setSeed(bench.SEED);
+                search.search(board, p);
+                result.playouts = search.getCount();
+                result.joinTime = search.getJoinTime();
+                result.syncTime = search.getSyncTime();
+            }
+        },
+        TREE {
+            @Override
+            void search(ScalingBenchmark bench, Result result, SearchExecutor executor, Board board, Player p) {
+                TreeMCTS search = new TreeMCTS(bench.TIMEOUT, false, false, executor);
+                if (bench.SEED != null) search.setSeed(bench.SEED);
+                search.search(board, p);
+                result.playouts = search.getCount();
+            }
+        },
+        TREE_TRANSPOSITIONS {
+            @Override
+            void search(ScalingBenchmark bench, Result result, SearchExecutor executor, Board board, Player p) {
+                TreeMCTS search = new TreeMCTS(bench.TIMEOUT, false, true, executor);
+                if (bench.SEED != null) search.setSeed(bench.SEED);
+                search.search(board, p);
+                result.playouts = search.getCount();
+            }
+        };
+
+        abstract void search(ScalingBenchmark bench, Result result, SearchExecutor executor, Board board, Player p);
+        // runs one search & records its playouts (plus join & sync time where there are any)
+    }
+
+
+    public static class Result {
+        // measurements from one search
+
+        private final Strategy strategy;
+        private final String position;
+        private final int threads;
+
+        private int playouts;
+        private long time;  // wall time in ns for the whole search (including joining)
+        private double efficiency;  // playouts per second over threads * the 1 thread rate
+
+        private long claimRetries, claimConflicts, wastedIterations;
+
+        private long joinTime, syncTime;  // in ns (sync time is summed over the workers)
+
+        private long peakHeap;  // in bytes
+
+
+        private Result(Strategy strategy, String position, int threads) {
+            this.strategy = strategy;
+            this.position = position;
+            this.threads = threads;
+        }
+
+
+        public double playoutsPerSecond() {
+            return playouts / (time / 1e9);
+        }
+    }
+}
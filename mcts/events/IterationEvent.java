@@ -0,0 +1,36 @@
+package mcts.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("mcts.Iteration")
+@Label("Iteration")
+@Category("MCTS")
+@Description("One sampled select, expand, playout & back-propagate iteration")
+public class IterationEvent extends Event {
+    // only every MCTS.SAMPLE_INTERVAL-th iteration of each worker is timed, & only while the event is enabled
+
+    @Label("Depth")
+    @Description("Plies below the root of the node selected for expansion")
+    public int depth;
+
+    @Label("Select Time")
+    @Timespan
+    public long selectTime;
+
+    @Label("Expand Time")
+    @Timespan
+    public long expandTime;
+
+    @Label("Playout Time")
+    @Timespan
+    public long playoutTime;
+
+    @Label("Backprop Time")
+    @Timespan
+    public long backpropTime;
+}
@@ -0,0 +1,21 @@
+package mcts.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("mcts.Join")
+@Label("Join")
+@Category("MCTS")
+@Description("Merging the workers' trees after a root parallel search")
+public class JoinEvent extends Event {
+
+    @Label("Trees")
+    public int trees;
+
+    @Label("Plies")
+    @Description("Plies below the root merged (0 merges the whole trees)")
+    public int plies;
+}
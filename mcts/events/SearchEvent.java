@@ -0,0 +1,97 @@
+package mcts.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import mcts.Contention;
+import mcts.TreeNode;
+
+@Name("mcts.Search")
+@Label("Search")
+@Category("MCTS")
+@Description("One search for a move, over every worker")
+public class SearchEvent extends Event {
+    // recorded once per top-level search (sequential, root parallel or tree parallel)
+    // contention counts are the process-wide counters' change during the search
+
+    @Label("Search Type")
+    public String searchType;
+
+    @Label("Threads")
+    public int threads;
+
+    @Label("Playouts")
+    public long playouts;
+
+    @Label("Tree Nodes")
+    @Description("Nodes in the final tree (the joined tree for root parallel searches)")
+    public long nodes;
+
+    @Label("Max Depth")
+    @Description("Deepest node selected for expansion, in plies below the root")
+    public int maxDepth;
+
+    @Label("Average Depth")
+    public double averageDepth;
+
+    @Label("Claim Conflicts")
+    @Description("Untried action sets built by a thread which lost the race to install them")
+    public long claimConflicts;
+
+    @Label("Claim Retries")
+    @Description("Expansions which found every action already taken by other threads")
+    public long claimRetries;
+
+    @Label("Wasted Iterations")
+    @Description("Iterations that found nothing to expand")
+    public long wastedIterations;
+
+    @Label("Pruned Nodes")
+    @Description("Nodes removed to stay within the node budget")
+    public long prunedNodes;
+
+    @Label("Refused Expansions")
+    @Description("Expansions skipped because the node budget was used up")
+    public long refusedExpansions;
+
+    @Label("Join Time")
+    @Timespan
+    public long joinTime;
+
+    @Label("Sync Time")
+    @Description("Time spent syncing, summed over the workers")
+    @Timespan
+    public long syncTime;
+
+
+    private transient long startConflicts, startRetries, startWasted;  // contention counters when the search started
+
+
+    public void start() {
+        // begins timing the search
+        begin();
+        startConflicts = Contention.CLAIM_CONFLICTS.sum();
+        startRetries = Contention.CLAIM_RETRIES.sum();
+        startWasted = Contention.WASTED_ITERATIONS.sum();
+    }
+
+    public void finish(String searchType, int threads, TreeNode tree, int maxDepth, long depthSum) {
+        // fills in the rest of the event from the searched tree & commits it
+        // (the tree is only walked if the event is being recorded)
+        end();
+        if (!shouldCommit()) return;
+
+        this.searchType = searchType;
+        this.threads = threads;
+        this.nodes = TreeNode.countNodes(tree);
+        this.maxDepth = maxDepth;
+        this.averageDepth = playouts > 0 ? (double) depthSum / playouts : 0;
+        this.claimConflicts = Contention.CLAIM_CONFLICTS.sum() - startConflicts;
+        this.claimRetries = Contention.CLAIM_RETRIES.sum() - startRetries;
+        this.wastedIterations = Contention.WASTED_ITERATIONS.sum() - startWasted;
+        commit();
+    }
+}
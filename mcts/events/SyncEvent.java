@@ -0,0 +1,18 @@
+package mcts.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("mcts.Sync")
+@Label("Sync")
+@Category("MCTS")
+@Description("One worker sharing its top-ply statistics during a root parallel search")
+public class SyncEvent extends Event {
+
+    @Label("Playouts")
+    @Description("Worker's playouts so far in the search")
+    public long playouts;
+}
@@ -2,33 +2,77 @@ package mcts.policies;
 
 import mcts.Action;
 import mcts.Board;
+import mcts.Contention;
 import mcts.Player;
 import mcts.TreeNode;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
 
 public abstract class ExpandPolicy {
     // abstract superclass for expansion policies (expands a node with a new child)
 
-    public abstract TreeNode expand(TreeNode node, Board board);
+    public abstract TreeNode expand(TreeNode node, Board board, RandomGenerator rand);
     // takes a node & returns the newly expanded child node
+    // (rand is the calling thread's own random source, for policies which need one)
 
 
-    protected List<Action> getNewActions(TreeNode node, Board b) {
-        // gets all possible actions which don't already have a child node
+    protected Action takeUntriedAction(TreeNode node, Board b, RandomGenerator rand) {
+        // takes the next of the node's untried actions, which are built & shuffled on its first expansion
+        // (so every later expansion is O(1)), returns null if every action has been taken
+        // b is at the node's position
+
+        if (node.getUntried() == null && !node.setUntried(getUntriedMoves(node, b, rand)))
+            Contention.CLAIM_CONFLICTS.increment();  // another thread built the node's moves first
+
+        int move = node.takeUntried();
+        if (move < 0) {
+            Contention.CLAIM_RETRIES.increment();  // selected, but other threads took the last moves first
+            return null;
+        }
 
-        // gets the player for the possible new children
         Player nextPlayer;
         if (node.getAction().getPlayer() == Player.RED) nextPlayer = Player.BLUE;
         else nextPlayer = Player.RED;
 
-        // get possible actions for the next player
-        List<Action> newActions = b.getActions(nextPlayer);
+        return Action.of(nextPlayer, move);
+    }
+
+    private static byte[] getUntriedMoves(TreeNode node, Board b, RandomGenerator rand) {
+        // gets every possible move (cell index, 121 = swap) which doesn't already have a child, in random order
 
-        // removes all actions which already have a child node
-        for (TreeNode child: node.getChildren())
-            newActions.remove(child.getAction());
+        // mark the moves which already have children (e.g. from a copied tree)
+        long expandedLow = 0, expandedHigh = 0;
+        for (TreeNode child: node.getChildren()) {
+            int move = child.getAction().getMoveIndex();
+            if (move < 64) expandedLow |= 1L << move;
+            else expandedHigh |= 1L << (move - 64);
+        }
+
+        // possible actions are the board's empty cells, then swap if it is available
+        int actions = b.getActionCount();
+        byte[] moves = new byte[actions];
+        int count = 0;
+        for (int n = 0; n < actions; n++) {
+            int move = moveAt(b, n);
+            if (((move < 64 ? expandedLow >>> move : expandedHigh >>> (move - 64)) & 1) == 0)
+                moves[count++] = (byte) move;
+        }
+        if (count < actions) moves = Arrays.copyOf(moves, count);
+
+        // fisher-yates shuffle, so taking from the front gives a random untried action
+        for (int i = count - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            byte temp = moves[i];
+            moves[i] = moves[j];
+            moves[j] = temp;
+        }
+
+        return moves;
+    }
 
-        return newActions;
+    private static int moveAt(Board b, int n) {
+        // move number of the nth possible action
+        return n < b.getEmptyCount() ? b.getEmptyCell(n) : Action.SWAP;
     }
-}
\ No newline at end of file
+}
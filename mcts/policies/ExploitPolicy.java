@@ -2,9 +2,12 @@ package mcts.policies;
 
 import mcts.TreeNode;
 
+import java.util.random.RandomGenerator;
+
 public abstract class ExploitPolicy {
     // abstract superclass for exploitation policies (picks an action after simulating)
 
-    public abstract TreeNode exploit(TreeNode root);
+    public abstract TreeNode exploit(TreeNode root, RandomGenerator rand);
     // takes the root node & returns the node for the chosen action
+    // (rand is the calling thread's own random source, for policies which need one)
 }
@@ -2,11 +2,13 @@ package mcts.policies;
 
 import mcts.TreeNode;
 
+import java.util.random.RandomGenerator;
+
 public class MostVisitedExploit extends ExploitPolicy {
     // selects the move which was visited most
 
     @Override
-    public TreeNode exploit(TreeNode root) {
+    public TreeNode exploit(TreeNode root, RandomGenerator rand) {
         // returns the child node with the highest visited count
 
         double mostVisited = Double.NEGATIVE_INFINITY;
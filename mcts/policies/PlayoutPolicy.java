@@ -4,9 +4,31 @@ import mcts.Action;
 import mcts.Board;
 import mcts.Player;
 
+import java.util.random.RandomGenerator;
+
 public abstract class PlayoutPolicy {
     // abstract superclass for tree policies (picks the next move to make during play-outs)
 
-    public abstract Action nextMove(Board b, Player p);
+    public abstract Action nextMove(Board b, Player p, RandomGenerator rand);
     // takes the current board state & player and returns the next action to be taken
+    // (rand is the calling thread's own random source, for policies which need one)
+
+
+    public Player playout(Board b, Player lastPlayer, RandomGenerator rand) {
+        // simulates moves until the game ends & returns the winner
+        // lastPlayer is the player who made the most recent move on the board
+
+        Player nextPlayer = lastPlayer;
+        while (b.checkWin() == Player.NONE) {
+            // swap player for the next move
+            if (nextPlayer == Player.RED) nextPlayer = Player.BLUE;
+            else nextPlayer = Player.RED;
+
+            // apply the next playout action to the board
+            Action next = nextMove(b, nextPlayer, rand);
+            b.applyAction(next);
+        }
+
+        return b.checkWin();
+    }
 }
@@ -4,23 +4,20 @@ import mcts.Action;
 import mcts.Board;
 import mcts.TreeNode;
 
-import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 public class RandomExpand extends ExpandPolicy {
     // selects a random action to expand
+    // lock-free, so it can be used for shared trees as well (untried actions are taken with an atomic increment,
+    // so threads expanding the same node always get different actions)
 
     @Override
-    public TreeNode expand(TreeNode node, Board board) {
+    public TreeNode expand(TreeNode node, Board board, RandomGenerator rand) {
         // creates a new child node with a random choice of action
 
-        Random rand = new Random();
-        List<Action> newActions = getNewActions(node, board);
+        Action action = takeUntriedAction(node, board, rand);
+        if (action == null) return null;
 
-        int randIndex = rand.nextInt(newActions.size());
-        TreeNode newChild = new TreeNode(node, newActions.get(randIndex));
-        node.addChild(newChild);
-
-        return newChild;
+        return node.expandChild(action);
     }
 }
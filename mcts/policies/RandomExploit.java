@@ -3,16 +3,15 @@ package mcts.policies;
 import mcts.TreeNode;
 
 import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 public class RandomExploit extends ExploitPolicy {
     // selects a random available move
 
     @Override
-    public TreeNode exploit(TreeNode root) {
+    public TreeNode exploit(TreeNode root, RandomGenerator rand) {
         // returns a random child node
 
-        Random rand = new Random();
         List<TreeNode> possibleChildren = root.getChildren();
 
         int randIndex = rand.nextInt(possibleChildren.size());
@@ -0,0 +1,40 @@
+package mcts.policies;
+
+import mcts.Board;
+import mcts.Player;
+
+import java.util.random.RandomGenerator;
+
+public class RandomFillPlayout extends RandomPlayout {
+    // uniform random playout which fills the whole board in one go
+    // hex can't end in a draw, so a full board always has exactly 1 winner, and a win can't be undone
+    // by later moves, so this gives the same result as playing random moves one at a time
+    // (swap is never chosen during the playout)
+    // keeps its own buffer for the shuffled cells, so each search thread needs its own instance
+
+    private final byte[] cells = new byte[121];
+
+
+    @Override
+    public Player playout(Board b, Player lastPlayer, RandomGenerator rand) {
+        // shuffles the empty cells once, assigns them alternately & checks for a winner at the end
+
+        if (b.checkWin() != Player.NONE) return b.checkWin();
+
+        int count = b.getEmptyCells(cells);
+
+        // fisher-yates shuffle of the empty cells
+        for (int i = count - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            byte temp = cells[i];
+            cells[i] = cells[j];
+            cells[j] = temp;
+        }
+
+        Player nextPlayer;
+        if (lastPlayer == Player.RED) nextPlayer = Player.BLUE;
+        else nextPlayer = Player.RED;
+
+        return b.fill(cells, count, nextPlayer);
+    }
+}
@@ -4,20 +4,14 @@ import mcts.Action;
 import mcts.Board;
 import mcts.Player;
 
-import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 public class RandomPlayout extends PlayoutPolicy{
     // selects a random available move
 
     @Override
-    public Action nextMove(Board b, Player p) {
-        // returns a random available action
-
-        Random rand = new Random();
-        List<Action> possibleActions = b.getActions(p);
-
-        int randIndex = rand.nextInt(possibleActions.size());
-        return possibleActions.get(randIndex);
+    public Action nextMove(Board b, Player p, RandomGenerator rand) {
+        // returns a random available action (picked straight from the board's empty cells)
+        return b.randomAction(p, rand);
     }
 }
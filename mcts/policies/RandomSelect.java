@@ -1,22 +1,62 @@
 package mcts.policies;
 
 import mcts.Board;
+import mcts.Frontier;
+import mcts.Player;
 import mcts.TreeNode;
 
-import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 public class RandomSelect extends SelectionPolicy {
     // selects a random node to expand
+    // keeps the expandable nodes in a frontier which is updated on each expansion, so only the first
+    // selection from a root walks the tree (not for shared trees, as other threads' expansions aren't seen)
+
+    private final Frontier frontier = new Frontier();
+
+    private TreeNode frontierRoot;  // root the frontier was built from
+
 
     @Override
-    public TreeNode select(TreeNode root, Board board) {
+    public TreeNode select(TreeNode root, Board board, RandomGenerator rand) {
         // returns a random expandable node
 
-        Random rand = new Random();
-        List<TreeNode> possibleNodes = getExpandableNodes(root, board);
+        if (root != frontierRoot) {
+            // new tree (or a reused one), so find its expandable nodes once
+            frontier.clear();
+            for (TreeNode node: getExpandableNodes(root, board)) frontier.add(node);
+            frontierRoot = root;
+        }
+
+        int rootMoves = board.getMoveCount();
+        TreeNode selected;
+        while ((selected = frontier.sample(rand)) != null) {
+            applyPath(root, selected, board);
 
-        int randIndex = rand.nextInt(possibleNodes.size());
-        return possibleNodes.get(randIndex);
+            // double check it can still be expanded (in case it was expanded without being tracked)
+            if (board.checkWin() == Player.NONE && selected.hasUntried(board))
+                return selected;
+
+            frontier.remove(selected);
+            board.undoTo(rootMoves);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void expanded(TreeNode node, TreeNode child, Board board) {
+        // drops the node once every action has a child, & adds the new child unless its game is over
+        if (!node.hasUntried(board)) frontier.remove(node);
+
+        board.applyAction(child.getAction());
+        if (board.checkWin() == Player.NONE && board.getActionCount() > 0) frontier.add(child);
+        board.undo();
+    }
+
+    @Override
+    public void pruned(TreeNode root) {
+        // the frontier may hold removed nodes (& arena views whose indices have moved), so rebuild it
+        frontierRoot = null;
     }
 }
@@ -6,40 +6,52 @@ import mcts.TreeNode;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.random.RandomGenerator;
 
 public abstract class SelectionPolicy {
     // abstract superclass for selection policies (picks a node to be expanded)
 
-    public abstract TreeNode select(TreeNode root, Board board);
+    public abstract TreeNode select(TreeNode root, Board board, RandomGenerator rand);
     // takes the root node & returns the selected node to be expanded
+    // board starts at the root's position & is left at the selected node's (the path's actions are applied to it)
+    // (rand is the calling thread's own random source, for policies which need one)
 
+    public void expanded(TreeNode node, TreeNode child, Board board) {
+        // called after child is added to node (board is at node's position), for policies which track the tree
+    }
 
-    protected List<TreeNode> getExpandableNodes(TreeNode node, Board b) {
-        // gets all nodes under the given node which are non-terminal & have unvisited children
+    public void pruned(TreeNode root) {
+        // called after subtrees below root have been removed, for policies which track the tree
+    }
 
-        List<TreeNode> expandableNodes = new ArrayList<>();
 
-        // create copy of the board with this node's action applied
-        Board newBoard = new Board(b);
-        newBoard.applyAction(node.getAction());
+    protected List<TreeNode> getExpandableNodes(TreeNode node, Board b) {
+        // gets all nodes under (& including) the given node which are non-terminal & have unvisited children
+        // b is at the node's position, & is back there afterwards
+        List<TreeNode> expandableNodes = new ArrayList<>();
+        addExpandableNodes(node, b, expandableNodes);
+        return expandableNodes;
+    }
 
+    private void addExpandableNodes(TreeNode node, Board b, List<TreeNode> expandableNodes) {
         // if this node is non-terminal with unvisited children, add it to the list of expandable nodes
-        if (newBoard.checkWin() == Player.NONE) {
-            Player nextPlayer;
-            if (node.getAction().getPlayer() == Player.RED) nextPlayer = Player.BLUE;
-            else nextPlayer = Player.RED;
-
-            if (newBoard.getActions(nextPlayer).size() > node.getChildren().size())
+        if (b.checkWin() == Player.NONE) {
+            if (node.hasUntried(b))
                 expandableNodes.add(node);
         }
 
-        // explore the node's existing children
+        // explore the node's existing children, applying & undoing each one's action on the same board
         for (TreeNode child: node.getChildren()) {
-            List<TreeNode> childExpandable = getExpandableNodes(child, newBoard);
-            // add all expandable nodes under the given child to the list of expandable nodes
-            expandableNodes.addAll(childExpandable);
+            b.applyAction(child.getAction());
+            addExpandableNodes(child, b, expandableNodes);
+            b.undo();
         }
+    }
 
-        return expandableNodes;
+    protected static void applyPath(TreeNode root, TreeNode node, Board b) {
+        // applies the actions on the path from root down to node (b starts at root's position)
+        if (node == root) return;
+        applyPath(root, node.getParent(), b);
+        b.applyAction(node.getAction());
     }
 }
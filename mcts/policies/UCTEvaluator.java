@@ -0,0 +1,138 @@
+package mcts.policies;
+
+import mcts.Action;
+import mcts.TreeNode;
+
+public class UCTEvaluator {
+    // finds the child with the highest ucb value, for the uct selection policies
+    // children's packed statistics are gathered into one array first (by index, without a node for each child),
+    // then scored in a single tight loop
+    // per-parent terms are worked out once per node, & 1/n, 1/sqrt(n) & sqrt(2 ln n) come from tables for
+    // realistic visit counts (falling back to Math above them)
+    // keeps its own buffers, so each search thread needs its own instance
+
+    public enum Variant {
+        UCB1,  // payoff / n + C * sqrt(2 ln N / n)
+        UCB1_TUNED  // payoff / n + C * sqrt(ln N / n * min(1/4, variance + sqrt(2 ln N / n))), for win / loss payoffs
+    }
+
+    private static final int TABLE_SIZE = 1 << 14;  // 3 tables of 16k doubles (384KB)
+
+    private static final double[] INVERSE = new double[TABLE_SIZE];  // 1 / n
+
+    private static final double[] INVERSE_SQRT = new double[TABLE_SIZE];  // 1 / sqrt(n)
+
+    private static final double[] SQRT_2_LOG = new double[TABLE_SIZE];  // sqrt(2 ln n)
+
+    static {
+        for (int n = 1; n < TABLE_SIZE; n++) {
+            INVERSE[n] = 1.0 / n;
+            INVERSE_SQRT[n] = 1 / Math.sqrt(n);
+            SQRT_2_LOG[n] = Math.sqrt(2 * Math.log(n));
+        }
+    }
+
+    private final double C;  // explore - exploit tradeoff
+
+    private final Variant variant;
+
+    private final long[] stats = new long[Action.MOVES];  // packed count & payoff of each child
+
+    private final short[] actions = new short[Action.MOVES];  // each child's Action.getIndex()
+
+    private int size;
+
+
+    public UCTEvaluator() {
+        this(1, Variant.UCB1);
+    }
+
+    public UCTEvaluator(double c, Variant variant) {
+        this.C = c;
+        this.variant = variant;
+    }
+
+
+    public int load(TreeNode node) {
+        // loads the node's children's statistics & actions, returning the no. of children
+        size = node.getChildStats(stats, actions);
+        return size;
+    }
+
+    public Action getAction(int i) {
+        return Action.byIndex(actions[i]);
+    }
+
+    public long getStats(int i) {
+        return stats[i];
+    }
+
+    public void setStats(int i, long childStats) {
+        // replaces the statistics the child is scored by (e.g. with its transposition's)
+        stats[i] = childStats;
+    }
+
+    public int best(int parentCount) {
+        // returns the index (in getChildren() order) of the loaded child with the highest ucb value, or -1 if
+        // there are none (unvisited children are skipped, as on shared trees they are still being expanded by
+        // another thread)
+        return variant == Variant.UCB1 ? bestUCB1(parentCount) : bestTuned(parentCount);
+    }
+
+
+    private int bestUCB1(int parentCount) {
+        double explore = C * sqrt2Log(parentCount);  // per-parent part of the explore term
+
+        int best = -1;
+        double bestVal = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            long s = stats[i];
+            int count = TreeNode.countOf(s);
+            if (count <= 0) continue;
+
+            double val = TreeNode.payoffOf(s) * inverse(count) + explore * inverseSqrt(count);
+            if (val > bestVal) {
+                bestVal = val;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private int bestTuned(int parentCount) {
+        double sqrt2Log = sqrt2Log(parentCount);
+        double log = sqrt2Log * sqrt2Log / 2;  // ln N (the table holds sqrt(2 ln N))
+
+        int best = -1;
+        double bestVal = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            long s = stats[i];
+            int count = TreeNode.countOf(s);
+            if (count <= 0) continue;
+
+            double inverse = inverse(count);
+            double mean = TreeNode.payoffOf(s) * inverse;
+            double variance = mean - mean * mean + sqrt2Log * inverseSqrt(count);  // bernoulli variance + bound
+            double val = mean + C * Math.sqrt(log * inverse * Math.min(0.25, variance));
+            if (val > bestVal) {
+                bestVal = val;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+
+    private static double inverse(int n) {
+        return n < TABLE_SIZE ? INVERSE[n] : 1.0 / n;
+    }
+
+    private static double inverseSqrt(int n) {
+        return n < TABLE_SIZE ? INVERSE_SQRT[n] : 1 / Math.sqrt(n);
+    }
+
+    private static double sqrt2Log(int n) {
+        if (n <= 0) return 0;
+        return n < TABLE_SIZE ? SQRT_2_LOG[n] : Math.sqrt(2 * Math.log(n));
+    }
+}
@@ -1,45 +1,45 @@
 package mcts.policies;
 
 import mcts.Board;
-import mcts.Player;
 import mcts.TreeNode;
 
+import java.util.random.RandomGenerator;
+
 public class UCTSelect extends SelectionPolicy {
     // selects the child node that maximises UCT
+    // lock-free, so it can be used for shared trees as well (each child's count & payoff are read as one snapshot)
 
-    private final double C = 1; // explore - exploit tradeoff
+    private final UCTEvaluator uct;
 
-    @Override
-    public TreeNode select(TreeNode root, Board board) {
-        // returns best node according to UCT
-
-        // get player for any children of current node
-        Player nextPlayer;
-        if (root.getAction().getPlayer() == Player.RED) nextPlayer = Player.BLUE;
-        else nextPlayer = Player.RED;
-
-        // if current node has any unvisited children, expand from this node
-        if (board.getActions(nextPlayer).size() > root.getChildren().size()) return root;
-
-        // otherwise find child node with highest UCT value
-        TreeNode bestChild = null;
-        double bestVal = Double.NEGATIVE_INFINITY;
-        for (TreeNode child: root.getChildren()) {
-            double exploit = (double) child.getPayoff() / child.getCount();
-            double explore = Math.sqrt(2 * Math.log(root.getCount()) / child.getCount());
-
-            double val = exploit + C * explore;
-            if (val > bestVal) {
-                bestVal = val;
-                bestChild = child;
-            }
-        }
 
-        if (bestChild == null) return null; // if this happens, then something has gone horribly wrong
+    public UCTSelect() {
+        this.uct = new UCTEvaluator();
+    }
 
-        // select node from best child
-        Board newBoard = new Board(board);
-        newBoard.applyAction(bestChild.getAction());
-        return select(bestChild, newBoard);
+    public UCTSelect(double c, UCTEvaluator.Variant variant) {
+        // c is the explore - exploit tradeoff
+        this.uct = new UCTEvaluator(c, variant);
+    }
+
+
+    @Override
+    public TreeNode select(TreeNode root, Board board, RandomGenerator rand) {
+        // returns best node according to UCT, applying the action of each node it descends to onto board
+        TreeNode node = root;
+        while (true) {
+            // if current node has any unvisited children, expand from this node
+            if (node.hasUntried(board)) return node;
+
+            // otherwise find child node with highest UCT value
+            uct.load(node);
+            int best = uct.best(node.getCount());
+
+            if (best < 0) return null; // if this happens, then something has gone horribly wrong
+            TreeNode bestChild = node.getChild(best);
+
+            // continue selecting from best child
+            board.applyAction(bestChild.getAction());
+            node = bestChild;
+        }
     }
 }
@@ -0,0 +1,67 @@
+package mcts.policies;
+
+import mcts.Action;
+import mcts.Board;
+import mcts.Player;
+import mcts.TranspositionTable;
+import mcts.TreeNode;
+
+import java.util.random.RandomGenerator;
+
+public class UCTSelectTransposition extends SelectionPolicy {
+    // selects the child node that maximises UCT, using statistics shared between transposed positions
+    // falls back to a node's own statistics if its position isn't in the table (or has been replaced)
+    // lock-free, so it can be used for shared trees as well
+
+    private final UCTEvaluator uct;
+
+    private final TranspositionTable table;
+
+
+    public UCTSelectTransposition(TranspositionTable table) {
+        this.uct = new UCTEvaluator();
+        this.table = table;
+    }
+
+    public UCTSelectTransposition(TranspositionTable table, double c, UCTEvaluator.Variant variant) {
+        // c is the explore - exploit tradeoff
+        this.uct = new UCTEvaluator(c, variant);
+        this.table = table;
+    }
+
+
+    @Override
+    public TreeNode select(TreeNode root, Board board, RandomGenerator rand) {
+        // returns best node according to UCT, applying the action of each node it descends to onto board
+        TreeNode node = root;
+        while (true) {
+            // if current node has any unvisited children, expand from this node
+            if (node.hasUntried(board)) return node;
+
+            // otherwise find child node with highest UCT value
+            int children = uct.load(node);
+            for (int i = 0; i < children; i++) {
+                Action a = uct.getAction(i);
+                uct.setStats(i, getStats(uct.getStats(i), a.getPlayer(), board.hashAfter(a)));
+            }
+            long stats = getStats(node.getStats(), node.getAction().getPlayer(), board.getHash());
+            int best = uct.best(TreeNode.countOf(stats));
+
+            if (best < 0) return null; // if this happens, then something has gone horribly wrong
+            TreeNode bestChild = node.getChild(best);
+
+            // continue selecting from best child
+            board.applyAction(bestChild.getAction());
+            node = bestChild;
+        }
+    }
+
+    private long getStats(long own, Player player, long hash) {
+        // uses the shared stats if they include at least as many visits as the node's own
+        // (player made the node's action, & hash is the position after it)
+        long shared = table.get(TranspositionTable.key(hash, player));
+
+        if (TreeNode.countOf(shared) >= TreeNode.countOf(own)) return shared;
+        return own;
+    }
+}
@@ -2,11 +2,13 @@ package mcts.policies;
 
 import mcts.TreeNode;
 
+import java.util.random.RandomGenerator;
+
 public class WinRateExploit extends ExploitPolicy {
     // selects the move with the best win rate (payoff / count)
 
     @Override
-    public TreeNode exploit(TreeNode root) {
+    public TreeNode exploit(TreeNode root, RandomGenerator rand) {
         // returns the child node with the highest win rate
 
         double bestWinRate = Double.NEGATIVE_INFINITY;